@@ -1,58 +1,254 @@
 package DataStructures;
 
-import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class Block<T extends IRecord<T>> {
 
-    private ArrayList<T> list;
+    // validCount (4) + next (8)
+    public static final int HEADER_SIZE = 12;
+
+    private RecordList list;
     private int validCount;
     private int blockFactor;
     private T prototype;
 
     private long next;
 
+    // vlastne instancie zaznamov, ak blok patri do poolu HeapFile
+    private ArrayList<T> ownRecords;
+
+    // lenivy rezim - surova stranka sa drzi v bloku a zaznam sa dekoduje az pri getList().get(i)
+    private boolean lazy;
+    private byte[] page;
+    private ByteBuffer pageBuffer;
+    private boolean[] decoded;
+    private ByteBuffer keyBuffer;
+
+    private BlockFormat format;
+    private int blockSize;
+    private ByteBuffer scratch;
+    private int[] prefixes;
+    private int[] prefixOffsets;
+
+    // obsadene sloty pri formate so stabilnymi slotmi, inak null (obsadene su sloty pod validCount)
+    private boolean[] live;
+    private int liveCount;
+
 
     public Block(int blockFactor, T prototype, ArrayList<T> emptyList) {
         this.blockFactor = blockFactor;
         this.prototype = prototype;
-        this.list = emptyList;
+        this.list = new RecordList(emptyList);
         this.validCount = 0;
         this.next = -1;
+        this.format = BlockFormat.fixed();
+    }
+
+    // velkost bloku na disku, potrebna pre SLOTTED format
+    void setFormat(BlockFormat format, int blockSize) {
+        this.format = format;
+        this.blockSize = blockSize;
+        this.live = format.hasStableSlots() ? new boolean[blockFactor] : null;
+        this.liveCount = 0;
+    }
+
+    public BlockFormat getFormat() {
+        return format;
     }
 
     public int getValidCount() {
         return this.validCount;
     }
 
+    // pri stabilnych slotoch zvysenie obsadi sloty na konci, znizenie ich uvolni
     public void setValidCount(int validCount) {
+        if (live != null) {
+            for (int i = this.validCount; i < validCount; i++) {
+                if (!live[i]) liveCount++;
+                live[i] = true;
+            }
+            for (int i = validCount; i < this.validCount; i++) {
+                if (live[i]) liveCount--;
+                live[i] = false;
+            }
+        }
         this.validCount = validCount;
     }
 
-    public ArrayList<T> getList() {
+    // pocet platnych zaznamov, bez stabilnych slotov rovny validCount
+    public int getLiveCount() {
+        return (live != null) ? liveCount : validCount;
+    }
+
+    public boolean isLive(int index) {
+        return index < validCount && (live == null || live[index]);
+    }
+
+    // zaznam do prveho volneho slotu, vrati index slotu
+    public int add(T record) {
+        int slot = freeSlot();
+        list.set(slot, record);
+        occupy(slot);
+        return slot;
+    }
+
+    // uvolni slot pri stabilnych slotoch, ostatne zaznamy ostanu na svojich miestach
+    // validCount sa skrati po posledny obsadeny slot
+    public void clearSlot(int index) {
+        if (live == null) {
+            throw new IllegalStateException("Format " + format + " nema stabilne sloty");
+        }
+        if (!isLive(index)) return;
+
+        live[index] = false;
+        liveCount--;
+        while (validCount > 0 && !live[validCount - 1]) {
+            validCount--;
+        }
+    }
+
+    private int freeSlot() {
+        if (live != null && liveCount < validCount) {
+            for (int i = 0; i < validCount; i++) {
+                if (!live[i]) return i;
+            }
+        }
+        return validCount;
+    }
+
+    private void occupy(int slot) {
+        if (live != null) {
+            live[slot] = true;
+            liveCount++;
+        }
+        validCount = Math.max(validCount, slot + 1);
+    }
+
+    public List<T> getList() {
         return list;
     }
 
+    public T getRecord(int index) {
+        return list.get(index);
+    }
 
-    public ArrayList<Byte> getBytes() {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream(bos);
+    // index platneho zaznamu zhodneho so vzorom alebo -1
+    // nad surovou strankou porovnava iba ulozene hashe a bajty kluca, dekoduje sa az najdeny zaznam
+    public int indexOf(T pattern) {
+        int keyOffset = pattern.getKeyOffset();
+
+        if (decoded == null) {
+            for (int i = 0; i < validCount; i++) {
+                if (live != null && !live[i]) continue;
+                if (list.get(i).isEqual(pattern)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
 
-        try {
-            dos.writeInt(this.validCount);
+        boolean rawHashes = format.hasHashes();
+        int hash = rawHashes ? pattern.getHashCode() : 0;
 
-            dos.writeLong(this.next);
+        boolean rawKeys = keyOffset >= 0;
+        int keyLength = pattern.getKeyLength();
+        byte[] key = null;
+        if (rawKeys) {
+            if (keyBuffer == null) {
+                keyBuffer = ByteBuffer.allocate(prototype.getSize());
+            }
+            pattern.writeKeyTo(keyBuffer, 0);
+            key = keyBuffer.array();
+        }
 
-            for (int i = 0; i < this.blockFactor; i++) {
-                ArrayList<Byte> rec = list.get(i).getBytes();
-                for (byte b : rec) dos.writeByte(b);
+        for (int i = 0; i < validCount; i++) {
+            if (live != null && !live[i]) continue;
+            if (decoded[i]) {
+                if (list.get(i).isEqual(pattern)) {
+                    return i;
+                }
+                continue;
             }
 
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            if (rawHashes && pageBuffer.getInt(hashOffset(i)) != hash) {
+                continue;
+            }
+
+            if (rawKeys) {
+                int from = recordOffset(i) + keyOffset;
+                if (Arrays.equals(page, from, from + keyLength, key, keyOffset, keyOffset + keyLength)) {
+                    return i;
+                }
+            } else if (list.get(i).isEqual(pattern)) {
+                return i;
+            }
         }
+        return -1;
+    }
+
+    // getHashCode() zaznamu, pri ulozenych hashoch bez dekodovania
+    public int getHash(int index) {
+        if (format.hasHashes() && decoded != null && !decoded[index]) {
+            return pageBuffer.getInt(hashOffset(index));
+        }
+        return list.get(index).getHashCode();
+    }
+
+    // prida zaznam index z bloku source do volneho slotu, nedekodovany zaznam sa iba skopiruje
+    // vrati index slotu
+    public int appendFrom(Block<T> source, int index) {
+        int target = freeSlot();
+
+        if (source.decoded != null && !source.decoded[index]) {
+            ensurePage();
+            System.arraycopy(source.page, source.recordOffset(index), page, recordOffset(target), prototype.getSize());
+            if (format.hasHashes()) {
+                pageBuffer.putInt(hashOffset(target), source.getHash(index));
+            }
+            decoded[target] = false;
+        } else {
+            list.set(target, source.list.get(index));
+        }
+
+        occupy(target);
+        return target;
+    }
+
+    // zmesti sa do bloku zaznam index z bloku source?
+    public boolean hasSpaceFor(Block<T> source, int index) {
+        if (getLiveCount() >= blockFactor) return false;
+        if (!format.isSlotted()) return true;
+
+        if (source.decoded != null && !source.decoded[index]) {
+            ensureScratch();
+            scratch.put(0, source.pageBuffer, source.recordOffset(index), prototype.getSize());
+        } else {
+            writeScratch(source.list.get(index));
+        }
+        return encodedSize(true, -1) <= blockSize;
+    }
 
-        byte[] raw = bos.toByteArray();
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+        if (!lazy) {
+            materializeAll();
+        }
+    }
+
+
+    public ArrayList<Byte> getBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(getSize());
+        writeTo(buffer, 0);
+
+        byte[] raw = buffer.array();
         ArrayList<Byte> out = new ArrayList<>(raw.length);
         for (byte b : raw) out.add(b);
         return out;
@@ -60,34 +256,399 @@ public class Block<T extends IRecord<T>> {
 
 
     public void fromBytes(ArrayList<Byte> bytes) {
-
         byte[] raw = new byte[bytes.size()];
         for (int i = 0; i < bytes.size(); i++) raw[i] = bytes.get(i);
 
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(raw));
+        readFrom(ByteBuffer.wrap(raw), 0);
+    }
+
+
+    public void writeTo(ByteBuffer buffer, int offset) {
+        buffer.putInt(offset, this.validCount);
+        buffer.putLong(offset + 4, this.next);
+
+        if (format.isSlotted()) {
+            writeSlotted(buffer, offset);
+            return;
+        }
+
+        int recSize = prototype.getSize();
+        writeBitmap(buffer, offset);
+
+        for (int i = 0; i < this.blockFactor; i++) {
+            int pos = offset + recordOffset(i);
+            if (decoded != null && !decoded[i]) {
+                buffer.put(pos, page, recordOffset(i), recSize);
+            } else {
+                list.get(i).writeTo(buffer, pos);
+            }
+
+            if (format.hasHashes()) {
+                buffer.putInt(offset + hashOffset(i), isLive(i) ? getHash(i) : 0);
+            }
+        }
+    }
+
+
+    public void readFrom(ByteBuffer buffer, int offset) {
+        if (format.isSlotted()) {
+            readSlotted(buffer, offset);
+            return;
+        }
+
+        if (lazy) {
+            ensurePage();
+            buffer.get(offset, page, 0, imageSize());
+            Arrays.fill(decoded, false);
+
+            this.validCount = pageBuffer.getInt(0);
+            this.next = pageBuffer.getLong(4);
+            readBitmap(pageBuffer, 0);
+            return;
+        }
+
+        this.decoded = null;
+        this.validCount = buffer.getInt(offset);
+        this.next = buffer.getLong(offset + 4);
+        readBitmap(buffer, offset);
+
+        for (int i = 0; i < this.blockFactor; i++) {
+            list.get(i).readFrom(buffer, offset + recordOffset(i));
+        }
+    }
+
+
+    // bitmapa obsadenych slotov hned za hlavickou, bit i % 8 bajtu i / 8
+    private void writeBitmap(ByteBuffer buffer, int offset) {
+        if (live == null) return;
+
+        for (int b = 0; b < bitmapSize(); b++) {
+            int bits = 0;
+            for (int k = 0; k < 8; k++) {
+                if (isLive(b * 8 + k)) {
+                    bits |= 1 << k;
+                }
+            }
+            buffer.put(offset + HEADER_SIZE + b, (byte) bits);
+        }
+    }
+
+    private void readBitmap(ByteBuffer buffer, int offset) {
+        if (live == null) return;
+
+        liveCount = 0;
+        for (int i = 0; i < blockFactor; i++) {
+            live[i] = i < validCount && isSet(buffer, offset, i);
+            if (live[i]) liveCount++;
+        }
+    }
+
+    private static boolean isSet(ByteBuffer buffer, int offset, int index) {
+        return (buffer.get(offset + HEADER_SIZE + index / 8) & (1 << (index % 8))) != 0;
+    }
+
+    // zaznam zo slotu index priamo z obrazu FIXED bloku so stabilnymi slotmi, ostatne sloty sa nedekoduju
+    // null, ak slot nie je obsadeny
+    static <T extends IRecord<T>> T readSlot(ByteBuffer buffer, int offset, int index,
+                                             int blockFactor, BlockFormat format, T prototype) {
+        if (index < 0 || index >= blockFactor || index >= buffer.getInt(offset) || !isSet(buffer, offset, index)) {
+            return null;
+        }
+
+        T record = prototype.createEmpty();
+        record.readFrom(buffer, offset + recordOffset(format, blockFactor, prototype.getSize(), index));
+        return record;
+    }
+
+    // zaznamy sa ukladaju od konca bloku, adresar slotov rastie od hlavicky
+    private void writeSlotted(ByteBuffer buffer, int offset) {
+        RecordLayout<T> layout = prototype.getLayout();
+
+        syncPage();
+        computePrefixes(false, -1);
+
+        int dir = offset + HEADER_SIZE;
+        if (format.isPrefixCompressed()) {
+            for (int j = 0; j < prefixes.length; j++) {
+                int from = recordOffset(0) + layout.getStringFields().get(j).getOffset();
+                buffer.put(dir, (byte) prefixes[j]);
+                buffer.put(dir + 1, pageBuffer, from, prefixes[j]);
+                dir += 1 + prefixes[j];
+            }
+        }
+
+        int slotSize = format.getSlotSize();
+        int dirEnd = dir + validCount * slotSize;
+        int end = offset + blockSize;
 
-        try {
-            this.validCount = dis.readInt();
+        for (int i = 0; i < validCount; i++) {
+            int length = layout.compactSize(pageBuffer, recordOffset(i), prefixes);
+            end -= length;
+            if (end < dirEnd) {
+                throw new IllegalStateException("Zaznamy sa nezmestia do bloku velkosti " + blockSize);
+            }
+
+            layout.compact(pageBuffer, recordOffset(i), buffer, end, prefixes);
+            int slot = dir + i * slotSize;
+            buffer.putShort(slot, (short) (end - offset));
+            buffer.putShort(slot + 2, (short) length);
+            if (format.hasHashes()) {
+                buffer.putInt(slot + BlockFormat.SLOT_SIZE, getHash(i));
+            }
+        }
+
+        for (int pos = dirEnd; pos < end; pos++) {
+            buffer.put(pos, (byte) 0);
+        }
+    }
+
+    // slotted zaznamy sa rozbalia do pevneho obrazu stranky, dalej sa s nimi pracuje ako pri lenivom bloku
+    private void readSlotted(ByteBuffer buffer, int offset) {
+        RecordLayout<T> layout = prototype.getLayout();
+
+        ensurePage();
+        ensurePrefixes();
+        Arrays.fill(decoded, false);
+
+        this.validCount = buffer.getInt(offset);
+        this.next = buffer.getLong(offset + 4);
+
+        int dir = offset + HEADER_SIZE;
+        if (format.isPrefixCompressed()) {
+            for (int j = 0; j < prefixes.length; j++) {
+                prefixes[j] = buffer.get(dir) & 0xFF;
+                prefixOffsets[j] = dir + 1;
+                dir += 1 + prefixes[j];
+            }
+        }
+
+        int slotSize = format.getSlotSize();
+        for (int i = 0; i < validCount; i++) {
+            int slot = dir + i * slotSize;
+            int slotOffset = buffer.getShort(slot) & 0xFFFF;
+            if (format.hasHashes()) {
+                pageBuffer.putInt(hashOffset(i), buffer.getInt(slot + BlockFormat.SLOT_SIZE));
+            }
+            if (format.isPrefixCompressed()) {
+                layout.expand(buffer, offset + slotOffset, pageBuffer, recordOffset(i), prefixOffsets, prefixes);
+            } else {
+                layout.expand(buffer, offset + slotOffset, pageBuffer, recordOffset(i));
+            }
+        }
+
+        if (!lazy) {
+            materializeAll();
+        }
+    }
+
+    // dekodovane zaznamy sa zapisu do obrazu stranky, potom su v nej vsetky platne zaznamy aktualne
+    private void syncPage() {
+        if (page == null) {
+            page = new byte[imageSize()];
+            pageBuffer = ByteBuffer.wrap(page);
+        }
+        for (int i = 0; i < validCount; i++) {
+            if (decoded == null || decoded[i]) {
+                list.get(i).writeTo(pageBuffer, recordOffset(i));
+            }
+        }
+    }
+
+    private void ensurePrefixes() {
+        if (prefixes == null) {
+            int strings = prototype.getLayout().getStringFields().size();
+            prefixes = new int[strings];
+            prefixOffsets = new int[strings];
+        }
+    }
+
+    // spolocne prefixy retazcov zaznamov v stranke (okrem skip) a pripadne zaznamu v scratch
+    // pri SLOTTED formate su vsetky nulove
+    private void computePrefixes(boolean withScratch, int skip) {
+        ensurePrefixes();
+        Arrays.fill(prefixes, 0);
+        if (!format.isPrefixCompressed()) return;
+
+        RecordLayout<T> layout = prototype.getLayout();
+        ByteBuffer refBuffer = null;
+        int refOffset = 0;
+
+        for (int i = 0; i <= validCount; i++) {
+            ByteBuffer image;
+            int imageOffset;
+            if (i < validCount) {
+                if (i == skip) continue;
+                image = pageBuffer;
+                imageOffset = recordOffset(i);
+            } else {
+                if (!withScratch) break;
+                image = scratch;
+                imageOffset = 0;
+            }
+
+            for (int j = 0; j < prefixes.length; j++) {
+                if (refBuffer == null) {
+                    prefixes[j] = layout.stringLength(j, image, imageOffset);
+                } else {
+                    prefixes[j] = Math.min(prefixes[j],
+                            layout.commonPrefix(j, refBuffer, refOffset, image, imageOffset));
+                }
+            }
+            if (refBuffer == null) {
+                refBuffer = image;
+                refOffset = imageOffset;
+            }
+        }
+    }
 
-            this.next = dis.readLong();
+    private int prefixSectionSize() {
+        if (!format.isPrefixCompressed()) return 0;
 
-            int recSize = prototype.getSize();
+        int size = 0;
+        for (int p : prefixes) {
+            size += 1 + p;
+        }
+        return size;
+    }
 
-            for (int i = 0; i < blockFactor; i++) {
-                byte[] tmp = new byte[recSize];
-                dis.readFully(tmp);
+    // velkost bloku na disku so vsetkymi platnymi zaznamami okrem skip, pripadne aj so zaznamom v scratch
+    private int encodedSize(boolean withScratch, int skip) {
+        RecordLayout<T> layout = prototype.getLayout();
 
-                ArrayList<Byte> arr = new ArrayList<>();
-                for (byte b : tmp) arr.add(b);
+        syncPage();
+        computePrefixes(withScratch, skip);
 
-                list.get(i).fromBytes(arr);
+        int size = HEADER_SIZE + prefixSectionSize();
+        for (int i = 0; i < validCount; i++) {
+            if (i != skip) {
+                size += format.getSlotSize() + layout.compactSize(pageBuffer, recordOffset(i), prefixes);
             }
+        }
+        if (withScratch) {
+            size += format.getSlotSize() + layout.compactSize(scratch, 0, prefixes);
+        }
+        return size;
+    }
 
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    private void ensureScratch() {
+        if (scratch == null) {
+            scratch = ByteBuffer.allocate(prototype.getSize());
         }
     }
 
+    private void writeScratch(T record) {
+        ensureScratch();
+        record.writeTo(scratch, 0);
+    }
+
+
+    // zmesti sa do bloku dalsi zaznam?
+    public boolean hasSpaceFor(T record) {
+        if (getLiveCount() >= blockFactor) return false;
+        if (!format.isSlotted()) return true;
+
+        writeScratch(record);
+        return encodedSize(true, -1) <= blockSize;
+    }
+
+    // zmesti sa zaznam na miesto zaznamu index?
+    public boolean canReplace(int index, T record) {
+        if (!format.isSlotted()) return true;
+
+        writeScratch(record);
+        return encodedSize(true, index) <= blockSize;
+    }
+
+    // blok je plny, ak sa don nezmesti uz ani najkratsi mozny zaznam
+    public boolean isFull() {
+        if (getLiveCount() >= blockFactor) return true;
+        if (!format.isSlotted()) return false;
+
+        int minimal = format.getSlotSize() + prototype.getLayout().getMinCompactSize();
+        return encodedSize(false, -1) + minimal > blockSize;
+    }
+
+
+    // obraz stranky ma rozlozenie FIXED bloku: hlavicka, pripadne bitmapa slotov a pole hashov, zaznamy
+    private int bitmapSize() {
+        return format.bitmapSize(blockFactor);
+    }
+
+    private int hashOffset(int index) {
+        return HEADER_SIZE + bitmapSize() + index * BlockFormat.HASH_SIZE;
+    }
+
+    private static int recordOffset(BlockFormat format, int blockFactor, int recordSize, int index) {
+        int hashAreaSize = format.hasHashes() ? blockFactor * BlockFormat.HASH_SIZE : 0;
+        return HEADER_SIZE + format.bitmapSize(blockFactor) + hashAreaSize + index * recordSize;
+    }
+
+    private int recordOffset(int index) {
+        return recordOffset(format, blockFactor, prototype.getSize(), index);
+    }
+
+    private int imageSize() {
+        return recordOffset(blockFactor);
+    }
+
+    // doteraz platili objekty v zozname, preto su vsetky sloty oznacene ako dekodovane
+    private void ensurePage() {
+        if (page == null) {
+            page = new byte[imageSize()];
+            pageBuffer = ByteBuffer.wrap(page);
+        }
+        if (decoded == null) {
+            decoded = new boolean[blockFactor];
+            Arrays.fill(decoded, true);
+        }
+    }
+
+    private void materializeAll() {
+        if (decoded == null) return;
+        for (int i = 0; i < validCount; i++) {
+            list.get(i);
+        }
+        decoded = null;
+    }
+
+
+    // velkost zakodovaneho bloku
+    public int getSize() {
+        if (format.isSlotted()) {
+            return blockSize;
+        }
+        return imageSize();
+    }
+
+
+
+    void retainRecords() {
+        this.ownRecords = new ArrayList<>(list.records);
+    }
+
+    boolean isRecyclable() {
+        return ownRecords != null;
+    }
+
+    // vrati blok do stavu po emptyBlock(), cudzie zaznamy vlozene cez getList().set() sa zahodia
+    void reset() {
+        for (int i = 0; i < blockFactor; i++) {
+            list.set(i, ownRecords.get(i));
+        }
+        this.validCount = 0;
+        this.next = -1;
+        if (live != null) {
+            Arrays.fill(live, false);
+            liveCount = 0;
+        }
+    }
+
+    // zaznam na indexe odchadza mimo blok, pool ho uz nesmie prepisat
+    void detach(int index) {
+        if (ownRecords != null && list.get(index) == ownRecords.get(index)) {
+            ownRecords.set(index, prototype.createEmpty());
+        }
+    }
 
 
     public long getNext() { return next; }
@@ -100,9 +661,46 @@ public class Block<T extends IRecord<T>> {
         sb.append("validCount=").append(validCount).append("\n");
 
         for (int i = 0; i < validCount; i++) {
+            if (!isLive(i)) continue;
             sb.append("  ").append(i).append(": ").append(list.get(i)).append("\n");
         }
         return sb.toString();
     }
 
+
+    // kazdy pristup (aj iterator, stream, indexOf) ide cez get(), takze v lenivom rezime dekoduje
+    private class RecordList extends AbstractList<T> {
+
+        private final ArrayList<T> records;
+
+        RecordList(ArrayList<T> records) {
+            this.records = new ArrayList<>(records);
+        }
+
+        @Override
+        public int size() {
+            return records.size();
+        }
+
+        @Override
+        public T get(int index) {
+            T record = records.get(index);
+            if (decoded != null && !decoded[index]) {
+                decoded[index] = true;
+                if (index < validCount) {
+                    record.readFrom(pageBuffer, recordOffset(index));
+                }
+            }
+            return record;
+        }
+
+        @Override
+        public T set(int index, T element) {
+            if (decoded != null) {
+                decoded[index] = true;
+            }
+            return records.set(index, element);
+        }
+    }
+
 }
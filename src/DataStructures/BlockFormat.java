@@ -0,0 +1,145 @@
+package DataStructures;
+
+// format bloku na disku
+// FIXED   - validCount, next a blockFactor zaznamov pevnej dlzky za sebou (predvoleny)
+// SLOTTED - validCount, next, adresar slotov (offset, dlzka) a zaznamy premennej dlzky
+//           od konca bloku, retazce sa ukladaju bez doplnenia nulami
+// PREFIX_COMPRESSED - ako SLOTTED, ale za hlavickou je pre kazdy retazcovy stlpec spolocny
+//           prefix vsetkych zaznamov bloku (1 bajt dlzky + bajty) a zaznamy drzia iba zvysok
+//
+// withHashes() - ku kazdemu zaznamu sa ulozi aj jeho getHashCode(), pri FIXED ako pole intov
+//           za hlavickou, pri SLOTTED v polozke adresara slotov
+// withStableSlots() - iba FIXED, za hlavickou je bitmapa obsadenych slotov (1 bit na slot),
+//           zmazany zaznam nechava dieru a ostatne zaznamy sa neposuvaju (RecordId ostava platny)
+//           validCount je pocet slotov po posledny obsadeny
+public class BlockFormat {
+
+    public enum Encoding {
+        FIXED, SLOTTED, PREFIX_COMPRESSED
+    }
+
+    // offset (2) + dlzka (2)
+    public static final int SLOT_SIZE = 4;
+    public static final int HASH_SIZE = 4;
+
+    private static final BlockFormat FIXED = new BlockFormat(Encoding.FIXED, false, false);
+    private static final BlockFormat SLOTTED = new BlockFormat(Encoding.SLOTTED, false, false);
+    private static final BlockFormat PREFIX_COMPRESSED = new BlockFormat(Encoding.PREFIX_COMPRESSED, false, false);
+
+    private final Encoding encoding;
+    private final boolean hashes;
+    private final boolean stableSlots;
+
+    private BlockFormat(Encoding encoding, boolean hashes, boolean stableSlots) {
+        this.encoding = encoding;
+        this.hashes = hashes;
+        this.stableSlots = stableSlots;
+    }
+
+    public static BlockFormat fixed() {
+        return FIXED;
+    }
+
+    public static BlockFormat slotted() {
+        return SLOTTED;
+    }
+
+    public static BlockFormat prefixCompressed() {
+        return PREFIX_COMPRESSED;
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    // zaznamy premennej dlzky s adresarom slotov
+    public boolean isSlotted() {
+        return encoding != Encoding.FIXED;
+    }
+
+    public boolean isPrefixCompressed() {
+        return encoding == Encoding.PREFIX_COMPRESSED;
+    }
+
+    public BlockFormat withHashes() {
+        return new BlockFormat(encoding, true, stableSlots);
+    }
+
+    public boolean hasHashes() {
+        return hashes;
+    }
+
+    public BlockFormat withStableSlots() {
+        if (isSlotted()) {
+            throw new IllegalArgumentException("Stabilne sloty podporuje iba FIXED format, nie " + encoding);
+        }
+        return new BlockFormat(encoding, hashes, true);
+    }
+
+    public boolean hasStableSlots() {
+        return stableSlots;
+    }
+
+    // velkost bitmapy obsadenych slotov
+    public int bitmapSize(int blockFactor) {
+        return stableSlots ? (blockFactor + 7) / 8 : 0;
+    }
+
+    // velkost polozky adresara slotov
+    public int getSlotSize() {
+        return hashes ? SLOT_SIZE + HASH_SIZE : SLOT_SIZE;
+    }
+
+    // maximalny pocet zaznamov v bloku
+    public int blockFactor(int blockSize, IRecord<?> prototype) {
+        if (isSlotted() && blockSize > 0xFFFF) {
+            throw new IllegalArgumentException(encoding + " blok moze mat najviac 65535 bajtov");
+        }
+        int overhead = blockOverhead(prototype);
+        int footprint = recordFootprint(prototype);
+
+        int blockFactor = Math.max(0, (blockSize - overhead) / footprint);
+        while (blockFactor > 0 && overhead + bitmapSize(blockFactor) + blockFactor * footprint > blockSize) {
+            blockFactor--;
+        }
+        return blockFactor;
+    }
+
+    // najmensi blok, do ktoreho sa zmesti zaznam maximalnej dlzky
+    // blockFactor pri SLOTTED pocita s najkratsim zaznamom, preto nestaci blockFactor > 0
+    public int minBlockSize(IRecord<?> prototype) {
+        if (encoding == Encoding.FIXED) {
+            return blockOverhead(prototype) + bitmapSize(1) + recordFootprint(prototype);
+        }
+        return blockOverhead(prototype) + getSlotSize() + prototype.getSize();
+    }
+
+    // bajty bloku, ktore nepatria ziadnemu zaznamu (bez bitmapy slotov, ta zavisi od blockFactor)
+    public int blockOverhead(IRecord<?> prototype) {
+        if (isPrefixCompressed()) {
+            return Block.HEADER_SIZE + layoutOf(prototype).getStringFields().size();
+        }
+        return Block.HEADER_SIZE;
+    }
+
+    // bajty na jeden zaznam vratane hashu alebo polozky adresara, pri SLOTTED pre najkratsi zaznam
+    public int recordFootprint(IRecord<?> prototype) {
+        if (encoding == Encoding.FIXED) {
+            return prototype.getSize() + (hashes ? HASH_SIZE : 0);
+        }
+        return layoutOf(prototype).getMinCompactSize() + getSlotSize();
+    }
+
+    private RecordLayout<?> layoutOf(IRecord<?> prototype) {
+        RecordLayout<?> layout = prototype.getLayout();
+        if (layout == null) {
+            throw new IllegalArgumentException(encoding + " format vyzaduje zaznam s RecordLayout");
+        }
+        return layout;
+    }
+
+    @Override
+    public String toString() {
+        return encoding.name() + (hashes ? "+HASHES" : "") + (stableSlots ? "+STABLE" : "");
+    }
+}
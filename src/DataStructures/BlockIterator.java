@@ -0,0 +1,98 @@
+package DataStructures;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// postupny prechod blokmi HeapFile v rozsahu adries [from, to)
+// bloky sa citaju po oknach readAhead blokov jednym citanim, volne bloky sa preskakuju
+// pocas prechodu sa subor nesmie menit
+public class BlockIterator<T extends IRecord<T>> implements Iterator<Block<T>> {
+
+    private final HeapFile<T> file;
+    private final int blockSize;
+    private final int readAhead;
+    private final long to;
+
+    private byte[] readBuffer;
+    private ByteBuffer window;
+    private long windowStart;
+    private int windowBlocks;
+
+    // adresa dalsieho bloku na vratenie, -1 ak treba hladat
+    private long nextAddr;
+    private long scanAddr;
+    private long currentAddr;
+
+    BlockIterator(HeapFile<T> file, long from, long to, int readAhead) {
+        this.file = file;
+        this.blockSize = file.getBlockSize();
+        this.readAhead = Math.max(1, readAhead);
+        this.to = to;
+
+        this.windowBlocks = 0;
+        this.scanAddr = from;
+        this.nextAddr = -1;
+        this.currentAddr = -1;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextAddr == -1) {
+            while (scanAddr + blockSize <= to && file.isFree(scanAddr)) {
+                scanAddr += blockSize;
+            }
+            if (scanAddr + blockSize <= to) {
+                nextAddr = scanAddr;
+            }
+        }
+        return nextAddr != -1;
+    }
+
+    @Override
+    public Block<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        long addr = nextAddr;
+        if (addr < windowStart || addr >= windowStart + (long) windowBlocks * blockSize) {
+            fill(addr);
+        }
+
+        Block<T> block = file.createEmptyBlock();
+        block.readFrom(window, (int) (addr - windowStart));
+
+        currentAddr = addr;
+        scanAddr = addr + blockSize;
+        nextAddr = -1;
+        return block;
+    }
+
+    // okno zacina na prvom neprazdnom bloku a konci pred koncom rozsahu
+    private void fill(long addr) {
+        long remaining = (to - addr) / blockSize;
+        int count = (int) Math.min(readAhead, remaining);
+
+        try {
+            window = file.getStorage().view(addr, count * blockSize);
+            if (window == null) {
+                if (readBuffer == null) {
+                    readBuffer = new byte[readAhead * blockSize];
+                }
+                window = ByteBuffer.wrap(readBuffer, 0, count * blockSize).slice();
+                file.getStorage().read(addr, window);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Citanie blokov od adresy " + addr + " zlyhalo", e);
+        }
+
+        windowStart = addr;
+        windowBlocks = count;
+    }
+
+    // adresa bloku vrateneho poslednym next()
+    public long getAddress() {
+        return currentAddr;
+    }
+}
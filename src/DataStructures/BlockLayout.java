@@ -0,0 +1,160 @@
+package DataStructures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// rozlozenie blokov HeapFile v subore
+//
+// plain        - bloky od adresy 0 ako doteraz
+// s hlavickou  - prva stranka suboru (pageSize bajtov) je hlavicka, bloky zacinaju za nou
+//                hlavicka: magic (4), verzia (4), pageSize (4), blockSize (4), blockFactor (4),
+//                kodovanie (4), priznaky (4: hashe, stabilne sloty) - subor sa da otvorit bez znalosti velkosti bloku
+// zarovnane    - s hlavickou a velkost bloku deli velkost stranky alebo je jej nasobkom,
+//                takze ziadny blok nelezi na dvoch strankach OS
+public class BlockLayout {
+
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+
+    private static final int MAGIC = 0x48504631;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 28;
+
+    private final int blockSize;
+    private final int pageSize;
+    private final boolean headerPage;
+
+    private BlockLayout(int blockSize, int pageSize, boolean headerPage) {
+        if (blockSize <= Block.HEADER_SIZE) {
+            throw new IllegalArgumentException("Prilis maly blok: " + blockSize);
+        }
+        if (headerPage && pageSize < HEADER_BYTES) {
+            throw new IllegalArgumentException("Prilis mala stranka: " + pageSize);
+        }
+        this.blockSize = blockSize;
+        this.pageSize = pageSize;
+        this.headerPage = headerPage;
+    }
+
+    public static BlockLayout plain(int blockSize) {
+        return new BlockLayout(blockSize, DEFAULT_PAGE_SIZE, false);
+    }
+
+    public static BlockLayout withHeaderPage(int blockSize, int pageSize) {
+        return new BlockLayout(blockSize, pageSize, true);
+    }
+
+    public static BlockLayout pageAligned(int blockSize, int pageSize) {
+        BlockLayout layout = withHeaderPage(blockSize, pageSize);
+        if (!layout.isPageAligned()) {
+            throw new IllegalArgumentException("Blok " + blockSize + " B nie je zarovnany na stranky " + pageSize + " B");
+        }
+        return layout;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public boolean hasHeaderPage() {
+        return headerPage;
+    }
+
+    // adresa prveho bloku v subore
+    public int getDataOffset() {
+        return headerPage ? pageSize : 0;
+    }
+
+    // kazdy blok zacina a konci na hranici stranky alebo lezi cely v jednej stranke
+    public boolean isPageAligned() {
+        return getDataOffset() % pageSize == 0
+                && (pageSize % blockSize == 0 || blockSize % pageSize == 0);
+    }
+
+    // priemerny pocet stranok OS, ktore zasiahne citanie jedneho bloku
+    public double pagesPerBlock() {
+        long period = pageSize / gcd(blockSize, pageSize);
+        long pages = 0;
+        for (long k = 0; k < period; k++) {
+            long start = getDataOffset() + k * blockSize;
+            pages += (start + blockSize - 1) / pageSize - start / pageSize + 1;
+        }
+        return (double) pages / period;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    // novy subor dostane hlavicku, existujuci musi mat hlavicku s rovnakym rozlozenim
+    void initHeader(IBlockStorage storage, int blockFactor, BlockFormat format) throws IOException {
+        ByteBuffer page = ByteBuffer.allocate(pageSize);
+
+        if (storage.length() == 0) {
+            page.putInt(0, MAGIC);
+            page.putInt(4, VERSION);
+            page.putInt(8, pageSize);
+            page.putInt(12, blockSize);
+            page.putInt(16, blockFactor);
+            page.putInt(20, format.getEncoding().ordinal());
+            page.putInt(24, flags(format));
+            storage.write(0, page);
+            return;
+        }
+
+        storage.read(0, page);
+        if (page.getInt(0) != MAGIC || page.getInt(4) != VERSION) {
+            throw new IOException("Subor nema hlavicku HeapFile");
+        }
+        if (page.getInt(8) != pageSize || page.getInt(12) != blockSize) {
+            throw new IOException("Subor ma bloky " + page.getInt(12) + " B a stranky " + page.getInt(8)
+                    + " B, ocakavane " + blockSize + " B a " + pageSize + " B");
+        }
+        if (page.getInt(16) != blockFactor || page.getInt(20) != format.getEncoding().ordinal()
+                || page.getInt(24) != flags(format)) {
+            throw new IOException("Subor bol vytvoreny pre iny zaznam alebo format bloku");
+        }
+    }
+
+    private static int flags(BlockFormat format) {
+        return (format.hasHashes() ? 1 : 0) | (format.hasStableSlots() ? 2 : 0);
+    }
+
+    // rozlozenie podla hlavicky existujuceho suboru, null ak subor neexistuje alebo hlavicku nema
+    public static BlockLayout read(String path) throws IOException {
+        Path file = Path.of(path);
+        if (!Files.exists(file) || Files.size(file) < HEADER_BYTES) {
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) break;
+            }
+        }
+
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            return null;
+        }
+        return withHeaderPage(header.getInt(12), header.getInt(8));
+    }
+
+    @Override
+    public String toString() {
+        return blockSize + " B" + (headerPage ? ", hlavicka " + pageSize + " B" : "")
+                + (isPageAligned() ? ", zarovnane" : "");
+    }
+}
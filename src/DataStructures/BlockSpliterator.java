@@ -0,0 +1,83 @@
+package DataStructures;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+// zaznamy HeapFile v rozsahu adries [from, to) pre Stream
+// trySplit rozdeli rozsah blokov na polovice, kazda cast si bloky cita sama cez BlockIterator,
+// takze paralelny stream cita disjunktne casti suboru naraz
+// deli sa iba ak ulozisko zvlada subezne citanie (IBlockStorage.supportsConcurrentReads)
+public class BlockSpliterator<T extends IRecord<T>> implements Spliterator<T> {
+
+    private final HeapFile<T> file;
+    private final int blockSize;
+    private final int readAhead;
+
+    private long from;
+    private final long to;
+
+    private BlockIterator<T> blocks;
+    private Block<T> block;
+    private int index;
+
+    BlockSpliterator(HeapFile<T> file, long from, long to, int readAhead) {
+        this.file = file;
+        this.blockSize = file.getBlockSize();
+        this.readAhead = readAhead;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (blocks == null) {
+            blocks = new BlockIterator<>(file, from, to, readAhead);
+        }
+
+        while (true) {
+            while (block != null && index < block.getValidCount() && !block.isLive(index)) {
+                index++;
+            }
+            if (block != null && index < block.getValidCount()) {
+                break;
+            }
+            if (!blocks.hasNext()) {
+                return false;
+            }
+            block = blocks.next();
+            index = 0;
+        }
+
+        action.accept(block.getList().get(index++));
+        return true;
+    }
+
+    // kazda polovica musi mat aspon jedno cele okno citania
+    @Override
+    public Spliterator<T> trySplit() {
+        if (blocks != null || !file.getStorage().supportsConcurrentReads()) {
+            return null;
+        }
+
+        long count = (to - from) / blockSize;
+        if (count < 2L * readAhead) {
+            return null;
+        }
+
+        long mid = from + (count / 2) * blockSize;
+        BlockSpliterator<T> prefix = new BlockSpliterator<>(file, from, mid, readAhead);
+        this.from = mid;
+        return prefix;
+    }
+
+    // horny odhad - vsetky bloky plne
+    @Override
+    public long estimateSize() {
+        return ((to - from) / blockSize) * file.getBlockFactor();
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+}
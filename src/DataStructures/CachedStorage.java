@@ -0,0 +1,239 @@
+package DataStructures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// cache blokov pred inym uloziskom - pevny pocet ramcov velkosti bloku, nahrada algoritmom CLOCK
+// zapis sa iba poznaci v ramci (dirty) a na disk ide pri vyhodeni ramca, flush() alebo close()
+//
+// cita a zapisuje sa po celych blokoch (aj viac naraz), adresa bloku je kluc ramca
+public class CachedStorage implements IBlockStorage {
+
+    private final IBlockStorage inner;
+    private final int blockSize;
+    private final int capacity;
+
+    private final ByteBuffer[] frames;
+    private final long[] addresses;
+    private final boolean[] referenced;
+    private final boolean[] dirty;
+    private final int[] pinCount;
+    private final HashMap<Long, Integer> frameOf;
+
+    private int used;
+    private int hand;
+    private long length;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long writeBacks;
+
+    // capacityBytes - rozpocet pamate, cache ma capacityBytes / blockSize ramcov (aspon jeden)
+    public CachedStorage(IBlockStorage inner, int blockSize, int capacityBytes) throws IOException {
+        this.inner = inner;
+        this.blockSize = blockSize;
+        this.capacity = Math.max(1, capacityBytes / blockSize);
+
+        this.frames = new ByteBuffer[capacity];
+        this.addresses = new long[capacity];
+        this.referenced = new boolean[capacity];
+        this.dirty = new boolean[capacity];
+        this.pinCount = new int[capacity];
+        this.frameOf = new HashMap<>(capacity * 2);
+
+        this.used = 0;
+        this.hand = 0;
+        this.length = inner.length();
+    }
+
+    private void checkSize(ByteBuffer buffer) {
+        if (buffer.capacity() == 0 || buffer.capacity() % blockSize != 0) {
+            throw new IllegalArgumentException("Cache pracuje iba s celymi blokmi velkosti " + blockSize);
+        }
+    }
+
+    // ramec s blokom na adrese addr, pri load == true sa pri chybe nacita z disku
+    // zasahy a chyby sa pocitaju iba pri citani, zapis celeho bloku disk necita
+    private int frame(long addr, boolean load) throws IOException {
+        Integer index = frameOf.get(addr);
+        if (index != null) {
+            if (load) hits++;
+            referenced[index] = true;
+            return index;
+        }
+
+        if (load) misses++;
+        int victim = (used < capacity) ? used++ : evict();
+
+        if (frames[victim] == null) {
+            frames[victim] = ByteBuffer.allocate(blockSize);
+        }
+        if (load) {
+            inner.read(addr, frames[victim]);
+        }
+
+        addresses[victim] = addr;
+        referenced[victim] = true;
+        dirty[victim] = false;
+        pinCount[victim] = 0;
+        frameOf.put(addr, victim);
+        return victim;
+    }
+
+    // CLOCK - ruka preskakuje pripnute ramce a ramcom s priznakom referenced da druhu sancu
+    private int evict() throws IOException {
+        for (int steps = 0; steps < 2 * capacity + 1; steps++) {
+            int i = hand;
+            hand = (hand + 1) % capacity;
+
+            if (pinCount[i] > 0) continue;
+            if (referenced[i]) {
+                referenced[i] = false;
+                continue;
+            }
+
+            if (dirty[i]) {
+                inner.write(addresses[i], frames[i]);
+                writeBacks++;
+            }
+            frameOf.remove(addresses[i]);
+            evictions++;
+            return i;
+        }
+        throw new IllegalStateException("Vsetky ramce cache su pripnute");
+    }
+
+    @Override
+    public void read(long addr, ByteBuffer buffer) throws IOException {
+        checkSize(buffer);
+        for (int pos = 0; pos < buffer.capacity(); pos += blockSize) {
+            buffer.put(pos, frames[frame(addr + pos, true)], 0, blockSize);
+        }
+    }
+
+    // ramec iba na citanie, plati do dalsej operacie s cache
+    @Override
+    public ByteBuffer view(long addr, int size) throws IOException {
+        if (size != blockSize) return null;
+        return frames[frame(addr, true)].asReadOnlyBuffer();
+    }
+
+    @Override
+    public void write(long addr, ByteBuffer buffer) throws IOException {
+        checkSize(buffer);
+        for (int pos = 0; pos < buffer.capacity(); pos += blockSize) {
+            int index = frame(addr + pos, false);
+
+            frames[index].put(0, buffer, pos, blockSize);
+            dirty[index] = true;
+        }
+        length = Math.max(length, addr + buffer.capacity());
+    }
+
+    // pripnuty blok sa z cache nevyhodi, kym sa nezavola unpin
+    public void pin(long addr) throws IOException {
+        pinCount[frame(addr, true)]++;
+    }
+
+    public void unpin(long addr) {
+        Integer index = frameOf.get(addr);
+        if (index != null && pinCount[index] > 0) {
+            pinCount[index]--;
+        }
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    // ramce za novym koncom suboru sa zahodia aj so zmenami
+    @Override
+    public void setLength(long newLength) throws IOException {
+        if (newLength < length) {
+            for (int i = 0; i < used; i++) {
+                if (addresses[i] >= newLength) {
+                    frameOf.remove(addresses[i]);
+                    dirty[i] = false;
+                    pinCount[i] = 0;
+                    referenced[i] = false;
+                    addresses[i] = -1;
+                }
+            }
+        }
+
+        inner.setLength(newLength);
+        length = newLength;
+    }
+
+    // zmenene ramce sa zapisu podla adries, aby zapis na disk isiel postupne
+    private void writeDirty() throws IOException {
+        Integer[] order = new Integer[used];
+        int count = 0;
+        for (int i = 0; i < used; i++) {
+            if (dirty[i]) {
+                order[count++] = i;
+            }
+        }
+        Arrays.sort(order, 0, count, (a, b) -> Long.compare(addresses[a], addresses[b]));
+
+        for (int k = 0; k < count; k++) {
+            int i = order[k];
+            inner.write(addresses[i], frames[i]);
+            dirty[i] = false;
+            writeBacks++;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeDirty();
+        inner.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        inner.close();
+    }
+
+
+    public IBlockStorage getInner() {
+        return inner;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getWriteBacks() {
+        return writeBacks;
+    }
+
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+        writeBacks = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", writeBacks=" + writeBacks;
+    }
+}
@@ -0,0 +1,79 @@
+package DataStructures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// pozicne citanie a zapis cez FileChannel - nepouziva zdielany ukazovatel v subore,
+// takze bloky z jedneho suboru moze naraz citat viac vlakien
+public class ChannelStorage implements IBlockStorage {
+
+    private final FileChannel channel;
+
+    public ChannelStorage(String path) throws IOException {
+        this.channel = FileChannel.open(Path.of(path),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    }
+
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    // read(ByteBuffer, long) moze vratit menej bajtov, preto sa cita v cykle
+    @Override
+    public void read(long addr, ByteBuffer buffer) throws IOException {
+        ByteBuffer dst = buffer.duplicate().clear();
+
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, addr + dst.position());
+            if (n < 0) break;
+        }
+
+        while (dst.hasRemaining()) {
+            dst.put((byte) 0);
+        }
+    }
+
+    @Override
+    public void write(long addr, ByteBuffer buffer) throws IOException {
+        ByteBuffer src = buffer.duplicate().clear();
+
+        while (src.hasRemaining()) {
+            channel.write(src, addr + src.position());
+        }
+    }
+
+    // pozicne citanie nemeni ziadny stav kanala
+    @Override
+    public boolean supportsConcurrentReads() {
+        return true;
+    }
+
+    @Override
+    public long length() throws IOException {
+        return channel.size();
+    }
+
+    // FileChannel.truncate subor iba skracuje
+    @Override
+    public void setLength(long length) throws IOException {
+        long size = channel.size();
+        if (length < size) {
+            channel.truncate(length);
+        } else if (length > size) {
+            channel.write(ByteBuffer.allocate(1), length - 1);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
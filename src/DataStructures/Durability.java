@@ -0,0 +1,13 @@
+package DataStructures;
+
+// kedy sa zapisy do write-ahead logu vynutia na disk (force)
+public enum Durability {
+    // bez logu, bloky sa zapisuju priamo ako doteraz
+    NONE,
+    // jeden force pre skupinu operacii, pri vypadku sa moze stratit posledna skupina
+    // skupina sa vynuti po GROUP_COMMIT_OPS operaciach, inak najneskor ~2x GROUP_COMMIT_MILLIS
+    // po prvej operacii skupiny (aj ked uz dalsia operacia nepride)
+    GROUP,
+    // force po kazdej operacii
+    EVERY_OP
+}
@@ -0,0 +1,313 @@
+package DataStructures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// binarna mapa volneho miesta HeapFile (subor .fsm)
+//
+// stranka 0 - hlavicka: magic (4), verzia (4), blockSize (4), blockFactor (4)
+// od stranky 1 - bitova mapa, 2 bity na blok (FULL, PARTIAL, FREE), blok n je v bajte n / 4
+//
+// kazda zmena stavu bloku sa hned zapise ako jeden bajt na svoje miesto,
+// subor sa teda nikdy neprepisuje cely a po otvoreni staci precitat bitovu mapu
+// s pripojenym logom ide zmena bajtu cez WriteAheadLog spolu so zmenenymi blokmi
+//
+// najnizsi blok v danom stave sa hlada priamo v mape - pre kazdu stranku mapy sa drzi pocet
+// PARTIAL a FREE blokov, stranky bez nich sa preskocia; pocty stranky sa spocitaju az pri
+// prvom hladani, ktore na nu narazi
+// mapa bez suboru (new FreeSpaceMap()) zije iba v pamati
+public class FreeSpaceMap implements ILogTarget {
+
+    public static final int PAGE_SIZE = 4096;
+
+    // plny blok alebo blok mimo suboru
+    public static final int FULL = 0;
+    public static final int PARTIAL = 1;
+    public static final int FREE = 2;
+
+    private static final int MAGIC = 0x46534D31;
+    private static final int VERSION = 1;
+    private static final int BLOCKS_PER_BYTE = 4;
+    private static final int BLOCKS_PER_PAGE = PAGE_SIZE * BLOCKS_PER_BYTE;
+
+    private final FileChannel channel;
+    private final ByteBuffer single;
+    private byte[] bitmap;
+    private boolean created;
+
+    // pocty PARTIAL a FREE blokov v strankach mapy, platne iba pre stranky s counted
+    private int[] partialCount;
+    private int[] freeCount;
+    private boolean[] counted;
+
+    private WriteAheadLog log;
+    private int target;
+
+    private int blockSize;
+    private int blockFactor;
+
+    public FreeSpaceMap(String path) throws IOException {
+        Path file = Path.of(path);
+        this.created = !Files.exists(file) || Files.size(file) < PAGE_SIZE;
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        this.single = ByteBuffer.allocate(1);
+
+        if (created) {
+            this.bitmap = new byte[0];
+            resetCounts();
+        } else {
+            load();
+        }
+    }
+
+    public FreeSpaceMap() {
+        this.channel = null;
+        this.single = null;
+        this.bitmap = new byte[0];
+        resetCounts();
+    }
+
+    private void load() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Neplatny subor mapy volneho miesta");
+        }
+        this.blockSize = header.getInt(8);
+        this.blockFactor = header.getInt(12);
+
+        this.bitmap = new byte[(int) (channel.size() - PAGE_SIZE)];
+        readFully(ByteBuffer.wrap(bitmap), PAGE_SIZE);
+        resetCounts();
+    }
+
+    private void resetCounts() {
+        int pages = (bitmap.length + PAGE_SIZE - 1) / PAGE_SIZE;
+        partialCount = new int[pages];
+        freeCount = new int[pages];
+        counted = new boolean[pages];
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Neocakavany koniec suboru mapy volneho miesta");
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    // subor este neexistoval, treba zapisat hlavicku
+    public boolean isCreated() {
+        return created;
+    }
+
+    public void writeHeader(int blockSize, int blockFactor) throws IOException {
+        this.blockSize = blockSize;
+        this.blockFactor = blockFactor;
+
+        ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, blockSize);
+        header.putInt(12, blockFactor);
+        writeFully(header, 0);
+        created = false;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getBlockFactor() {
+        return blockFactor;
+    }
+
+    // pocet blokov, ktore mapa pokryva
+    public long getCapacity() {
+        return (long) bitmap.length * BLOCKS_PER_BYTE;
+    }
+
+    public int get(long block) {
+        int index = (int) (block / BLOCKS_PER_BYTE);
+        if (index >= bitmap.length) return FULL;
+
+        int shift = (int) (block % BLOCKS_PER_BYTE) * 2;
+        return (bitmap[index] >> shift) & 0b11;
+    }
+
+    public void set(long block, int state) throws IOException {
+        int index = (int) (block / BLOCKS_PER_BYTE);
+        if (index >= bitmap.length) {
+            if (state == FULL) return;
+            grow(index + 1);
+        }
+
+        int shift = (int) (block % BLOCKS_PER_BYTE) * 2;
+        int old = (bitmap[index] >> shift) & 0b11;
+        if (old == state) return;
+
+        int page = index / PAGE_SIZE;
+        if (counted[page]) {
+            count(page, old, -1);
+            count(page, state, 1);
+        }
+
+        byte value = (byte) ((bitmap[index] & ~(0b11 << shift)) | (state << shift));
+        bitmap[index] = value;
+        if (channel == null) return;
+
+        single.clear();
+        single.put(0, value);
+        if (log != null) {
+            log.write(target, PAGE_SIZE + index, single);
+        } else {
+            writeFully(single, PAGE_SIZE + index);
+        }
+    }
+
+    private void count(int page, int state, int delta) {
+        if (state == PARTIAL) {
+            partialCount[page] += delta;
+        } else if (state == FREE) {
+            freeCount[page] += delta;
+        }
+    }
+
+    // nove bajty su nuly (FULL), takze pocty doterajsich stranok ostavaju platne
+    // a nove stranky su spocitane hned
+    private void grow(int minLength) {
+        int length = Math.max(minLength, Math.max(64, bitmap.length * 2));
+        byte[] bigger = new byte[length];
+        System.arraycopy(bitmap, 0, bigger, 0, bitmap.length);
+        bitmap = bigger;
+
+        int pages = (length + PAGE_SIZE - 1) / PAGE_SIZE;
+        int oldPages = counted.length;
+        partialCount = Arrays.copyOf(partialCount, pages);
+        freeCount = Arrays.copyOf(freeCount, pages);
+        counted = Arrays.copyOf(counted, pages);
+        Arrays.fill(counted, oldPages, pages, true);
+    }
+
+    private void countPage(int page) {
+        int partial = 0;
+        int free = 0;
+        int end = Math.min(bitmap.length, (page + 1) * PAGE_SIZE);
+        for (int i = page * PAGE_SIZE; i < end; i++) {
+            int value = bitmap[i];
+            if (value == 0) continue;
+            for (int shift = 0; shift < 8; shift += 2) {
+                int state = (value >> shift) & 0b11;
+                if (state == PARTIAL) partial++;
+                else if (state == FREE) free++;
+            }
+        }
+        partialCount[page] = partial;
+        freeCount[page] = free;
+        counted[page] = true;
+    }
+
+    // najnizsi blok v stave PARTIAL alebo FREE od bloku from, inak -1
+    public long first(int state, long from) {
+        int startPage = (int) (from / BLOCKS_PER_PAGE);
+        for (int page = startPage; page < counted.length; page++) {
+            if (!counted[page]) countPage(page);
+            int count = (state == PARTIAL) ? partialCount[page] : freeCount[page];
+            if (count == 0) continue;
+
+            long block = Math.max(from, (long) page * BLOCKS_PER_PAGE);
+            long end = Math.min((long) (page + 1) * BLOCKS_PER_PAGE, getCapacity());
+            for (; block < end; block++) {
+                if (bitmap[(int) (block / BLOCKS_PER_BYTE)] == 0) {
+                    block |= BLOCKS_PER_BYTE - 1;
+                    continue;
+                }
+                if (get(block) == state) return block;
+            }
+        }
+        return -1;
+    }
+
+    public long first(int state) {
+        return first(state, 0);
+    }
+
+    // bloky od blockCount dalej uz v subore nie su
+    public void truncate(long blockCount) throws IOException {
+        int keep = (int) ((blockCount + BLOCKS_PER_BYTE - 1) / BLOCKS_PER_BYTE);
+        if (keep > bitmap.length) return;
+
+        for (long b = blockCount; b < (long) keep * BLOCKS_PER_BYTE; b++) {
+            set(b, FULL);
+        }
+        for (int i = keep; i < bitmap.length; i++) {
+            bitmap[i] = 0;
+        }
+        // pocty odrezanych stranok sa spocitaju znova
+        for (int page = keep / PAGE_SIZE; page < counted.length; page++) {
+            counted[page] = false;
+        }
+        if (channel == null) return;
+
+        if (log != null) {
+            log.setLength(target, PAGE_SIZE + keep);
+        } else {
+            channel.truncate(PAGE_SIZE + keep);
+        }
+    }
+
+    // dalsie zmeny idu cez log, hlavicka uz musi byt zapisana
+    public void attachLog(WriteAheadLog log) {
+        this.log = log;
+        this.target = log.register(this);
+    }
+
+    // bitova mapa sa znova nacita zo suboru, napr. po obnove z logu
+    public void reload() throws IOException {
+        load();
+    }
+
+    @Override
+    public void redoWrite(long offset, ByteBuffer data) throws IOException {
+        writeFully(data.duplicate().clear(), offset);
+    }
+
+    @Override
+    public void redoLength(long length) throws IOException {
+        if (length < channel.size()) {
+            channel.truncate(length);
+        } else if (length > channel.size()) {
+            channel.write(ByteBuffer.allocate(1), length - 1);
+        }
+    }
+
+    @Override
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    public void flush() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    public void close() throws IOException {
+        flush();
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
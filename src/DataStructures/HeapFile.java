@@ -1,40 +1,99 @@
 package DataStructures;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class HeapFile<T extends IRecord<T>> {
 
-    private RandomAccessFile raf;
+    // najviac blokov v jednom zapise pri insertAll
+    public static final int BULK_BLOCKS = 64;
+    // pocet blokov citanych naraz pri prechode suborom
+    public static final int DEFAULT_READ_AHEAD = 32;
+
+    private IBlockStorage storage;
     private String metaPath;
+    // stav blokov, subor .fsm iba pre hlavny subor, preplnovaci ju ma iba v pamati
+    private FreeSpaceMap freeSpaceMap;
     private String path;
 
     private int blockSize;
     private int blockFactor;
+    private BlockLayout layout;
 
-    private ArrayList<Long> freeBlocks;
-    private ArrayList<Long> partialBlocks;
     private T prototype;
+    private BlockFormat format;
+
+    private boolean lazyBlocks;
+
+    // write-ahead log, ownsLog - subor ma vlastny log a sam uzatvara operacie
+    private WriteAheadLog log;
+    private boolean ownsLog;
+
+    private boolean recycling;
+    private int poolSize;
+    private ArrayDeque<Block<T>> blockPool;
+    private ArrayDeque<ByteBuffer> bufferPool;
 
 
 
     public HeapFile(String path, int blockSize, T prototype, boolean isOverflow) throws Exception {
+        this(path, blockSize, prototype, isOverflow, BlockFormat.fixed());
+    }
+
+    public HeapFile(String path, int blockSize, T prototype, boolean isOverflow, BlockFormat format) throws Exception {
+        this(path, blockSize, prototype, isOverflow, format, new ChannelStorage(path));
+    }
+
+    // storage - ulozisko blokov suboru path, path sa pouziva uz iba pre metadata
+    public HeapFile(String path, int blockSize, T prototype, boolean isOverflow, BlockFormat format,
+                    IBlockStorage storage) throws Exception {
+        this(path, BlockLayout.plain(blockSize), prototype, isOverflow, format, storage);
+    }
+
+    // pri rozlozeni s hlavickou sa pre novy subor zapise prva stranka a pre existujuci sa skontroluje
+    public HeapFile(String path, BlockLayout layout, T prototype, boolean isOverflow, BlockFormat format,
+                    IBlockStorage storage) throws Exception {
         this.path = path;
+        this.layout = layout;
         if (!isOverflow) {
-            this.metaPath = path + ".meta";
+            this.metaPath = path + ".fsm";
         } else {
             this.metaPath = null;
         }
 
-        this.blockSize = blockSize;
+        this.blockSize = layout.getBlockSize();
         this.prototype = prototype;
+        this.format = format;
+
+        if (blockSize < format.minBlockSize(prototype)) {
+            throw new IllegalArgumentException("Blok " + blockSize + " B je pre format " + format
+                    + " prilis maly, zaznam maximalnej dlzky potrebuje aspon " + format.minBlockSize(prototype) + " B");
+        }
+        this.blockFactor = format.blockFactor(blockSize, prototype);
 
-        this.blockFactor = (blockSize - 12) / prototype.getSize();
+        this.freeSpaceMap = new FreeSpaceMap();
 
-        this.freeBlocks = new ArrayList<>();
-        this.partialBlocks = new ArrayList<>();
+        // segmenty sa delia po celych blokoch, hlavicka aj posun blokov za nou musia byt ich nasobkom
+        if (storage instanceof SegmentedStorage) {
+            int segmentBlock = ((SegmentedStorage) storage).getBlockSize();
+            if (segmentBlock != blockSize) {
+                throw new IllegalArgumentException("Segmenty maju bloky " + segmentBlock
+                        + " B, subor " + blockSize + " B");
+            }
+            if (layout.getDataOffset() % blockSize != 0) {
+                throw new IllegalArgumentException("Hlavicka " + layout.getDataOffset()
+                        + " B nie je nasobkom bloku " + blockSize + " B, segmenty ju nevedia ulozit");
+            }
+        }
 
-        this.raf = new RandomAccessFile(path, "rw");
+        if (layout.hasHeaderPage()) {
+            layout.initHeader(storage, blockFactor, format);
+            storage = new OffsetStorage(storage, layout.getDataOffset());
+        }
+        this.storage = storage;
 
         if (!isOverflow) {
             this.loadMetadata();
@@ -58,6 +117,8 @@ public class HeapFile<T extends IRecord<T>> {
         Block<T> block = new Block<>(blockFactor, prototype, list);
         block.setValidCount(0);
         block.setNext(-1);
+        block.setFormat(format, blockSize);
+        block.setLazy(lazyBlocks);
         return block;
     }
 
@@ -68,234 +129,633 @@ public class HeapFile<T extends IRecord<T>> {
 
 
     public long insert(T data) throws Exception {
+        RecordId rid = insertRecord(data);
+        commitOperation();
+        return rid.getAddress();
+    }
+
+    // vrati adresu bloku aj slot zaznamu, vyzaduje format so stabilnymi slotmi
+    public RecordId insertWithId(T data) throws Exception {
+        checkStableSlots();
+        RecordId rid = insertRecord(data);
+        commitOperation();
+        return rid;
+    }
+
+    private RecordId insertRecord(T data) throws Exception {
 
         long addr;
 
-        if (!partialBlocks.isEmpty()) {
-            Collections.sort(partialBlocks);
-            addr = partialBlocks.get(0);
+        // pri SLOTTED formate sa zaznam nemusi zmestit ani do neplneho bloku,
+        // taky blok sa vyradi zo zoznamu a skusi sa dalsi
+        while ((addr = firstBlock(FreeSpaceMap.PARTIAL)) != -1) {
+            Block<T> block = borrowBlock(addr);
+            try {
+                if (block.hasSpaceFor(data)) {
+                    int slot = block.add(data);
 
-            Block<T> block = readBlock(addr);
+                    if (block.isFull())
+                        markFull(addr);
 
-            int validCount = block.getValidCount();
-            block.getList().set(validCount, data);
-            block.setValidCount(validCount + 1);
+                    writeBlock(addr, block);
+                    return new RecordId(addr, slot);
+                }
 
-            if (block.getValidCount() == blockFactor)
-                partialBlocks.remove(0);
+                markFull(addr);
+            } finally {
+                releaseBlock(block);
+            }
+        }
+
+        addr = firstBlock(FreeSpaceMap.FREE);
+        if (addr == -1) {
+            addr = storage.length();
+        }
+
+        Block<T> block = borrowEmptyBlock();
+        int slot;
+        try {
+            slot = block.add(data);
+
+            if (block.isFull())
+                markFull(addr);
+            else
+                markPartial(addr);
 
             writeBlock(addr, block);
-            return addr;
+        } finally {
+            releaseBlock(block);
+        }
+        return new RecordId(addr, slot);
+    }
+
+    // hromadne vkladanie - najprv sa doplnia ciastocne plne bloky (kazdy jednym citanim a zapisom),
+    // zvysok sa zabali do novych blokov v pamati a susedne bloky sa zapisu naraz po BULK_BLOCKS
+    // vrati adresy blokov v poradi vkladanych zaznamov
+    public ArrayList<Long> insertAll(Iterable<T> records) throws Exception {
+        ArrayList<Long> addresses = insertRecords(records);
+        commitOperation();
+        return addresses;
+    }
+
+    private ArrayList<Long> insertRecords(Iterable<T> records) throws Exception {
+        ArrayList<Long> addresses = new ArrayList<>();
+        Iterator<T> it = records.iterator();
+        T pending = it.hasNext() ? it.next() : null;
+
+        long addr;
+        while (pending != null && (addr = firstBlock(FreeSpaceMap.PARTIAL)) != -1) {
+
+            Block<T> block = borrowBlock(addr);
+            try {
+                boolean changed = false;
+                while (pending != null && block.hasSpaceFor(pending)) {
+                    block.add(pending);
+                    addresses.add(addr);
+                    changed = true;
+                    pending = it.hasNext() ? it.next() : null;
+                }
+
+                // dalsi zaznam sa nezmestil - blok sa vyradi rovnako ako v insert()
+                if (pending != null || block.isFull()) {
+                    markFull(addr);
+                }
+                if (changed) {
+                    writeBlock(addr, block);
+                }
+            } finally {
+                releaseBlock(block);
+            }
         }
 
-        if (!freeBlocks.isEmpty()) {
-            Collections.sort(freeBlocks);
-            addr = freeBlocks.remove(0);
+        ArrayList<Block<T>> run = new ArrayList<>(BULK_BLOCKS);
+        long runStart = -1;
+        long tail = storage.length();
+        ByteBuffer buffer = null;
+
+        while (pending != null) {
+            addr = firstBlock(FreeSpaceMap.FREE);
+            if (addr == -1) {
+                addr = tail;
+                tail += blockSize;
+            }
 
             Block<T> block = emptyBlock();
-            block.getList().set(0, data);
-            block.setValidCount(1);
+            while (pending != null && block.hasSpaceFor(pending)) {
+                block.add(pending);
+                addresses.add(addr);
+                pending = it.hasNext() ? it.next() : null;
+            }
 
-            if (blockFactor > 1)
-                partialBlocks.add(addr);
+            // inak by sa pre ten isty zaznam donekonecna alokovali nove bloky
+            if (block.getLiveCount() == 0) {
+                throw new IllegalStateException("Zaznam sa nezmesti ani do prazdneho bloku velkosti " + blockSize);
+            }
 
-            writeBlock(addr, block);
-            return addr;
+            if (block.isFull())
+                markFull(addr);
+            else
+                markPartial(addr);
+
+            if (!run.isEmpty() && (addr != runStart + (long) run.size() * blockSize || run.size() == BULK_BLOCKS)) {
+                buffer = writeRun(runStart, run, buffer);
+                run.clear();
+            }
+            if (run.isEmpty()) {
+                runStart = addr;
+            }
+            run.add(block);
         }
 
-        addr = raf.length();
+        if (!run.isEmpty()) {
+            writeRun(runStart, run, buffer);
+        }
+        return addresses;
+    }
 
-        Block<T> block = emptyBlock();
-        block.getList().set(0, data);
-        block.setValidCount(1);
+    // susedne bloky od adresy addr jednym zapisom
+    private ByteBuffer writeRun(long addr, ArrayList<Block<T>> blocks, ByteBuffer buffer) throws Exception {
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(BULK_BLOCKS * blockSize);
+        }
 
-        if (blockFactor > 1) {
-            partialBlocks.add(addr);
+        for (int i = 0; i < blocks.size(); i++) {
+            Block<T> block = blocks.get(i);
+            int offset = i * blockSize;
+            block.writeTo(buffer, offset);
+            Arrays.fill(buffer.array(), offset + block.getSize(), offset + blockSize, (byte) 0);
         }
 
-        writeBlock(addr, block);
-        return addr;
+        storage.write(addr, buffer.slice(0, blocks.size() * blockSize));
+        return buffer;
     }
 
     public T get(long addr, T pattern) throws Exception {
-        Block<T> block = readBlock(addr);
-
-        for (int i = 0; i < block.getValidCount(); i++) {
-            T pom = block.getList().get(i);
-            if (pom.isEqual(pattern)){
-                return pom;
+        Block<T> block = borrowBlock(addr);
+        try {
+            int index = block.indexOf(pattern);
+            if (index == -1) {
+                return null;
             }
+
+            T pom = block.getList().get(index);
+            block.detach(index);
+            return pom;
+        } finally {
+            releaseBlock(block);
+        }
+    }
+
+    // z obrazu bloku sa dekoduje iba slot zaznamu, nic sa neporovnava
+    // null, ak slot nie je obsadeny alebo blok uz v subore nie je
+    public T get(RecordId rid) throws Exception {
+        checkStableSlots();
+        long addr = rid.getAddress();
+        if (addr < 0 || addr + blockSize > storage.length()) {
+            return null;
+        }
+
+        ByteBuffer view = storage.view(addr, blockSize);
+        if (view != null) {
+            return Block.readSlot(view, 0, rid.getSlot(), blockFactor, format, prototype);
+        }
+
+        ByteBuffer buffer = takeBuffer();
+        try {
+            storage.read(addr, buffer);
+            return Block.readSlot(buffer, 0, rid.getSlot(), blockFactor, format, prototype);
+        } finally {
+            giveBuffer(buffer);
         }
-        return null;
     }
 
     public boolean delete(long addr, T pattern) throws Exception {
-        Block<T> block = readBlock(addr);
-        int validCount = block.getValidCount();
-
-        int index = -1;
-        for (int i = 0; i < validCount; i++) {
-            if (block.getList().get(i).isEqual(pattern)) {
-                index = i;
-                break;
+        boolean deleted = deleteRecord(addr, pattern);
+        commitOperation();
+        return deleted;
+    }
+
+    public boolean delete(RecordId rid) throws Exception {
+        checkStableSlots();
+        boolean deleted = deleteRecord(rid);
+        commitOperation();
+        return deleted;
+    }
+
+    private boolean deleteRecord(long addr, T pattern) throws Exception {
+        Block<T> block = borrowBlock(addr);
+        try {
+            int index = block.indexOf(pattern);
+
+            if (index == -1) {
+                return false;
             }
+
+            removeSlot(addr, block, index);
+            return true;
+        } finally {
+            releaseBlock(block);
         }
+    }
 
-        if (index == -1) {
+    private boolean deleteRecord(RecordId rid) throws Exception {
+        long addr = rid.getAddress();
+        int slot = rid.getSlot();
+        if (addr < 0 || addr + blockSize > storage.length() || slot < 0 || slot >= blockFactor) {
             return false;
         }
 
-        block.getList().set(index, block.getList().get(validCount - 1));
-        block.setValidCount(validCount - 1);
-        block.getList().set(block.getValidCount(), prototype.createEmpty());
+        Block<T> block = borrowBlock(addr);
+        try {
+            if (!block.isLive(slot)) {
+                return false;
+            }
 
-        if (block.getValidCount() == 0) {
-            handleEmptyBlock(addr);
+            removeSlot(addr, block, slot);
             return true;
+        } finally {
+            releaseBlock(block);
+        }
+    }
+
+    // pri stabilnych slotoch ostane v bloku diera, inak sa na miesto zaznamu presunie posledny
+    private void removeSlot(long addr, Block<T> block, int index) throws Exception {
+        if (format.hasStableSlots()) {
+            block.clearSlot(index);
+        } else {
+            int validCount = block.getValidCount();
+            block.getList().set(index, block.getList().get(validCount - 1));
+            block.setValidCount(validCount - 1);
+            if (!recycling) {
+                block.getList().set(block.getValidCount(), prototype.createEmpty());
+            }
+        }
+
+        if (block.getValidCount() == 0) {
+            handleEmptyBlock(addr, block);
+            return;
         }
 
-        else if (!partialBlocks.contains(addr)){
-            partialBlocks.add(addr);
+        else if (!block.isFull()){
+            markPartial(addr);
         }
 
         writeBlock(addr, block);
-        return true;
     }
 
-    private void handleEmptyBlock(long addr) throws Exception {
+    // prazdny blok v strede suboru sa musi zapisat, inak by v nom na disku ostali stare zaznamy
+    private void handleEmptyBlock(long addr, Block<T> block) throws Exception {
 
-        partialBlocks.remove(addr);
+        markFree(addr);
 
-        long fileEnd = raf.length() - blockSize;
+        long fileEnd = storage.length() - blockSize;
 
         if (addr == fileEnd) {
-            if (!freeBlocks.contains(addr))
-                freeBlocks.add(addr);
-
             shrinkFile();
         }
         else {
-            if (!freeBlocks.contains(addr))
-                freeBlocks.add(addr);
+            writeBlock(addr, block);
         }
     }
 
 
     public Block<T> readBlock(long addr) throws Exception {
-        raf.seek(addr);
-        byte[] arr = new byte[blockSize];
-        raf.read(arr);
-
-        ArrayList<Byte> byteList = new ArrayList<>(blockSize);
-        for (byte bajt : arr) {
-            byteList.add(bajt);
+        ByteBuffer buffer = storage.view(addr, blockSize);
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(blockSize);
+            storage.read(addr, buffer);
         }
 
         Block<T> block = emptyBlock();
-        block.fromBytes(byteList);
+        block.readFrom(buffer, 0);
 
         return block;
     }
 
 
+    // bloky na adresach addrs v rovnakom poradi ako adresy, kazda pozicia ma vlastny blok
+    // adresy sa usporiadaju a susedne (aj opakovane) sa precitaju jednym citanim po BULK_BLOCKS blokov,
+    // ak ulozisko zvlada subezne citanie, jednotlive citania bezia paralelne
+    // opakovana adresa sa pre dalsiu poziciu precita znova, aby zmena jedneho bloku nemenila iny
+    public ArrayList<Block<T>> readBlocks(long[] addrs) throws Exception {
+        long[] sorted = addrs.clone();
+        Arrays.sort(sorted);
+
+        ArrayList<long[]> runs = new ArrayList<>();
+        long[] run = null;
+        for (long addr : sorted) {
+            if (run != null && addr == run[0] + (run[1] - 1) * blockSize) continue;
+
+            if (run != null && addr == run[0] + run[1] * blockSize && run[1] < BULK_BLOCKS) {
+                run[1]++;
+            } else {
+                run = new long[] {addr, 1};
+                runs.add(run);
+            }
+        }
+
+        HashMap<Long, Block<T>> blocks = new HashMap<>();
+        if (runs.size() > 1 && storage.supportsConcurrentReads()) {
+            List<HashMap<Long, Block<T>>> parts = runs.parallelStream().map(r -> {
+                try {
+                    return readRun(r[0], (int) r[1]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toList();
+            parts.forEach(blocks::putAll);
+        } else {
+            for (long[] r : runs) {
+                blocks.putAll(readRun(r[0], (int) r[1]));
+            }
+        }
+
+        ArrayList<Block<T>> result = new ArrayList<>(addrs.length);
+        for (long addr : addrs) {
+            Block<T> block = blocks.remove(addr);
+            result.add((block != null) ? block : readBlock(addr));
+        }
+        return result;
+    }
+
+    private HashMap<Long, Block<T>> readRun(long start, int count) throws IOException {
+        ByteBuffer buffer = storage.view(start, count * blockSize);
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(count * blockSize);
+            storage.read(start, buffer);
+        }
+
+        HashMap<Long, Block<T>> blocks = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            Block<T> block = emptyBlock();
+            block.readFrom(buffer, i * blockSize);
+            blocks.put(start + (long) i * blockSize, block);
+        }
+        return blocks;
+    }
+
+
     public void writeBlock(long addr, Block<T> block) throws Exception {
-        ArrayList<Byte> byteList = block.getBytes();
+        ByteBuffer buffer = takeBuffer();
+        try {
+            block.writeTo(buffer, 0);
+            Arrays.fill(buffer.array(), block.getSize(), blockSize, (byte) 0);
+
+            storage.write(addr, buffer);
+        } finally {
+            giveBuffer(buffer);
+        }
+    }
+
+
+    // prechod vsetkymi neprazdnymi blokmi suboru
+    public BlockIterator<T> blockIterator() throws Exception {
+        return blockIterator(DEFAULT_READ_AHEAD);
+    }
+
+    public BlockIterator<T> blockIterator(int readAhead) throws Exception {
+        return blockIterator(0, storage.length(), readAhead);
+    }
+
+    // bloky s adresami v rozsahu [from, to)
+    public BlockIterator<T> blockIterator(long from, long to, int readAhead) throws Exception {
+        return new BlockIterator<>(this, from, Math.min(to, storage.length()), readAhead);
+    }
+
+    // prechod platnymi zaznamami vsetkych blokov
+    public Iterator<T> recordIterator() throws Exception {
+        BlockIterator<T> blocks = blockIterator();
+
+        return new Iterator<T>() {
+            private Block<T> block;
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                while (true) {
+                    // diery po zmazanych zaznamoch pri stabilnych slotoch
+                    while (block != null && index < block.getValidCount() && !block.isLive(index)) {
+                        index++;
+                    }
+                    if ((block != null && index < block.getValidCount()) || !blocks.hasNext()) {
+                        return block != null && index < block.getValidCount();
+                    }
+                    block = blocks.next();
+                    index = 0;
+                }
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return block.getList().get(index++);
+            }
+        };
+    }
 
-        byte[] finalBytes = new byte[blockSize];
+    public Stream<T> records() throws Exception {
+        return StreamSupport.stream(recordSpliterator(), false);
+    }
 
-        int limit = Math.min(byteList.size(), blockSize);
-        for (int i = 0; i < limit; i++) {
-            finalBytes[i] = byteList.get(i);
+    // paralelny prechod - casti suboru citaju vlakna spolocneho ForkJoinPool,
+    // pri ulozisku bez subezneho citania (RafStorage, CachedStorage) prebehne sekvencne
+    public Stream<T> parallelRecords() throws Exception {
+        return StreamSupport.stream(recordSpliterator(), true);
+    }
+
+    public Spliterator<T> recordSpliterator() throws Exception {
+        return new BlockSpliterator<>(this, 0, storage.length(), DEFAULT_READ_AHEAD);
+    }
+
+    boolean isFree(long addr) {
+        return freeSpaceMap.get(addr / blockSize) == FreeSpaceMap.FREE;
+    }
+
+    // najnizsia adresa bloku v danom stave, inak -1
+    private long firstBlock(int state) {
+        long block = freeSpaceMap.first(state);
+        return (block == -1) ? -1 : block * blockSize;
+    }
+
+
+    // bloky drzia surovu stranku a dekoduju iba zaznamy, na ktore sa niekto pozrie
+    public void setLazyBlocks(boolean lazyBlocks) {
+        this.lazyBlocks = lazyBlocks;
+        if (recycling) {
+            blockPool.clear();
         }
+    }
+
+    public boolean isLazyBlocks() {
+        return lazyBlocks;
+    }
 
+    // recyklacia blokov - v ustalenom stave find/insert nealokuju bloky ani buffre
+    public void enableBlockRecycling(int poolSize) {
+        this.recycling = true;
+        this.poolSize = poolSize;
+        this.blockPool = new ArrayDeque<>(poolSize);
+        this.bufferPool = new ArrayDeque<>(poolSize);
+    }
 
-        raf.seek(addr);
-        raf.write(finalBytes);
+    public void disableBlockRecycling() {
+        this.recycling = false;
+        this.blockPool = null;
+        this.bufferPool = null;
     }
 
+    public boolean isRecycling() {
+        return recycling;
+    }
 
-    private void saveMetadata() throws Exception {
-        if (metaPath == null) return;
-        PrintWriter pw = new PrintWriter(metaPath);
+    // blok z poolu naplneny z disku, po pouziti treba zavolat releaseBlock
+    public Block<T> borrowBlock(long addr) throws Exception {
+        if (!recycling) {
+            return readBlock(addr);
+        }
 
-        pw.println(blockFactor);
-        pw.println(blockSize);
+        Block<T> block = borrowEmptyBlock();
+        ByteBuffer view = storage.view(addr, blockSize);
+        if (view != null) {
+            block.readFrom(view, 0);
+            return block;
+        }
 
-        pw.println(freeBlocks.size());
-        for (long x : freeBlocks) {
-            pw.println(x);
+        ByteBuffer buffer = takeBuffer();
+        try {
+            storage.read(addr, buffer);
+            block.readFrom(buffer, 0);
+        } finally {
+            giveBuffer(buffer);
         }
+        return block;
+    }
 
-        pw.println(partialBlocks.size());
-        for (long x : partialBlocks) {
-            pw.println(x);
+    public Block<T> borrowEmptyBlock() {
+        if (!recycling) {
+            return emptyBlock();
         }
 
-        pw.close();
+        Block<T> block = blockPool.poll();
+        if (block == null) {
+            block = emptyBlock();
+            block.retainRecords();
+        }
+        return block;
+    }
+
+    public void releaseBlock(Block<T> block) {
+        if (!recycling || !block.isRecyclable() || blockPool.size() >= poolSize) {
+            return;
+        }
+        block.reset();
+        blockPool.push(block);
+    }
+
+    private ByteBuffer takeBuffer() {
+        if (recycling) {
+            ByteBuffer buffer = bufferPool.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocate(blockSize);
+    }
+
+    private void giveBuffer(ByteBuffer buffer) {
+        if (recycling && bufferPool.size() < poolSize) {
+            bufferPool.push(buffer);
+        }
     }
 
+
+    // stav blokov sa nacita z .fsm, starsi textovy .meta sa pri prvom otvoreni prevedie
     private void loadMetadata() throws Exception {
         if (metaPath == null) return;
-        File file = new File(metaPath);
-        if (!file.exists()) return;
+
+        freeSpaceMap = new FreeSpaceMap(metaPath);
+        if (freeSpaceMap.isCreated()) {
+            convertLegacyMetadata();
+            return;
+        }
+
+        blockFactor = freeSpaceMap.getBlockFactor();
+        blockSize = freeSpaceMap.getBlockSize();
+    }
+
+    private String legacyMetaPath() {
+        return path + ".meta";
+    }
+
+    // novy subor dostane iba hlavicku, stav blokov z .meta sa prepise do mapy
+    private void convertLegacyMetadata() throws Exception {
+        File file = new File(legacyMetaPath());
+        if (!file.exists()) {
+            freeSpaceMap.writeHeader(blockSize, blockFactor);
+            return;
+        }
 
         Scanner sc = new Scanner(file);
 
         blockFactor = Integer.parseInt(sc.nextLine());
         blockSize = Integer.parseInt(sc.nextLine());
+        freeSpaceMap.writeHeader(blockSize, blockFactor);
 
         int free = Integer.parseInt(sc.nextLine());
-        freeBlocks.clear();
         for (int i = 0; i < free; i++) {
-            freeBlocks.add(Long.parseLong(sc.nextLine()));
+            freeSpaceMap.set(Long.parseLong(sc.nextLine()) / blockSize, FreeSpaceMap.FREE);
         }
 
         int part = Integer.parseInt(sc.nextLine());
-        partialBlocks.clear();
         for (int i = 0; i < part; i++) {
-            partialBlocks.add(Long.parseLong(sc.nextLine()));
+            freeSpaceMap.set(Long.parseLong(sc.nextLine()) / blockSize, FreeSpaceMap.PARTIAL);
         }
 
         sc.close();
+        freeSpaceMap.flush();
+        file.delete();
     }
 
     public void close() throws Exception {
-        saveMetadata();
-        raf.close();
+        if (ownsLog) {
+            log.close();
+        }
+        freeSpaceMap.close();
+        storage.close();
     }
 
     public String print() {
         StringBuilder sb = new StringBuilder();
 
         try {
-            long fileLength = raf.length();
-            long addr = 0;
-            int blockIndex = 0;
+            long fileLength = storage.length();
 
             sb.append("File length: ").append(fileLength).append(" bytes\n");
             sb.append("Block size: ").append(blockSize).append(" bytes\n\n");
 
-            while (addr + blockSize <= fileLength) {
-                Block<T> block = readBlock(addr);
+            BlockIterator<T> blocks = blockIterator();
+            while (blocks.hasNext()) {
+                Block<T> block = blocks.next();
+                long addr = blocks.getAddress();
 
                 if (block.getValidCount() > 0) {
-                    sb.append("----- BLOCK ").append(blockIndex)
+                    sb.append("----- BLOCK ").append(addr / blockSize)
                             .append(" on address ").append(addr).append(" -----\n");
                     sb.append("validCount = ").append(block.getValidCount()).append("\n");
 
                     for (int i = 0; i < block.getValidCount(); i++) {
+                        if (!block.isLive(i)) continue;
                         sb.append("  [").append(i).append("] ")
                                 .append(block.getList().get(i)).append("\n");
                     }
                     sb.append("\n");
                 }
-
-                addr += blockSize;
-                blockIndex++;
             }
 
-            sb.append("Free blocks: ").append(freeBlocks).append("\n");
-            sb.append("Semi-free blocks: ").append(partialBlocks).append("\n");
+            sb.append("Free blocks: ").append(blocksIn(FreeSpaceMap.FREE)).append("\n");
+            sb.append("Semi-free blocks: ").append(blocksIn(FreeSpaceMap.PARTIAL)).append("\n");
 
         } catch (Exception e) {
             sb.append("PRINT FAILED: ").append(e.getMessage()).append("\n");
@@ -304,52 +764,305 @@ public class HeapFile<T extends IRecord<T>> {
         return sb.toString();
     }
 
+    // adresy vsetkych blokov v danom stave, iba pre vypis
+    private ArrayList<Long> blocksIn(int state) {
+        ArrayList<Long> addresses = new ArrayList<>();
+        for (long b = freeSpaceMap.first(state); b != -1; b = freeSpaceMap.first(state, b + 1)) {
+            addresses.add(b * blockSize);
+        }
+        return addresses;
+    }
+
+    // blok na najnizsej volnej adrese, inak na konci suboru
     public long writeNewBlock(Block<T> block) throws Exception {
-        long addr = raf.length();
+        long addr = firstBlock(FreeSpaceMap.FREE);
+        if (addr != -1) {
+            markFull(addr);
+        } else {
+            addr = storage.length();
+        }
         writeBlock(addr, block);
         return addr;
     }
 
 
     public long getFileLength() throws Exception {
-        return raf.length();
+        return storage.length();
     }
     public int getBlockSize() {
         return blockSize;
     }
 
 
-    public void shrinkFile() throws Exception {
-        Collections.sort(freeBlocks);
+    // zhustenie suboru - zaznamy z posledneho bloku sa presuvaju do najnizsich volnych
+    // alebo ciastocne plnych blokov a vyprazdneny koniec suboru sa odreze
+    // spracuje najviac maxBlocks zdrojovych blokov, aby sa dalo striedat s beznou pracou,
+    // dalsie volanie pokracuje tam, kde skoncilo (stav je iba v mape volneho miesta)
+    // vrati true, ak uz nie je co presuvat
+    // kazdy presunuty blok je v logu samostatna operacia
+    public boolean compact(int maxBlocks, IRelocationListener<T> listener) throws Exception {
+        shrinkFile();
+        commitOperation();
+
+        for (int done = 0; done < maxBlocks; done++) {
+            long source = storage.length() - blockSize;
+            if (!hasTargetBelow(source)) {
+                return true;
+            }
+            compactBlock(source, listener);
+            commitOperation();
+        }
+        return !hasTargetBelow(storage.length() - blockSize);
+    }
 
-        long newSize = raf.length();
+    private long lowestTarget() {
+        long partial = firstBlock(FreeSpaceMap.PARTIAL);
+        long free = firstBlock(FreeSpaceMap.FREE);
 
-        while (true) {
-            long lastAddr = newSize - blockSize;
-            if (lastAddr < 0) break;
+        if (partial == -1) return free;
+        if (free == -1) return partial;
+        return Math.min(partial, free);
+    }
 
-            if (freeBlocks.contains(lastAddr)) {
-                freeBlocks.remove(lastAddr);
-                newSize -= blockSize;
-            } else {
-                break;
+    private boolean hasTargetBelow(long addr) {
+        long target = lowestTarget();
+        return addr >= 0 && target != -1 && target < addr;
+    }
+
+    // zaznamy sa beru od konca zdrojoveho bloku, takze sa vo zdroji nic neposuva
+    // diery po zmazanych zaznamoch sa preskakuju
+    private void compactBlock(long source, IRelocationListener<T> listener) throws Exception {
+        Block<T> src = readBlock(source);
+
+        while (src.getValidCount() > 0 && hasTargetBelow(source)) {
+            long target = lowestTarget();
+            boolean wasFree = isFree(target);
+            Block<T> dst = wasFree ? emptyBlock() : readBlock(target);
+
+            // dvojice (slot v zdroji, slot v cieli)
+            ArrayList<int[]> moves = new ArrayList<>();
+            int firstMoved = src.getValidCount();
+            while (firstMoved > 0) {
+                int index = firstMoved - 1;
+                if (src.isLive(index)) {
+                    if (!dst.hasSpaceFor(src, index)) break;
+                    moves.add(new int[] {index, dst.appendFrom(src, index)});
+                }
+                firstMoved--;
+            }
+
+            // ani jeden zaznam sa nezmestil - blok sa vyradi rovnako ako v insert()
+            if (moves.isEmpty()) {
+                markFull(target);
+                continue;
+            }
+
+            if (dst.isFull())
+                markFull(target);
+            else
+                markPartial(target);
+            writeBlock(target, dst);
+
+            // zaznamy treba dekodovat skor, nez sa zmensi validCount zdroja
+            ArrayList<T> moved = new ArrayList<>();
+            if (listener != null) {
+                for (int[] move : moves) {
+                    moved.add(src.getList().get(move[0]));
+                }
+            }
+
+            src.setValidCount(firstMoved);
+            writeSourceBlock(source, src);
+
+            for (int i = 0; i < moved.size(); i++) {
+                int[] move = moves.get(i);
+                listener.relocated(moved.get(i), new RecordId(source, move[0]), new RecordId(target, move[1]));
             }
         }
+    }
 
-        raf.setLength(newSize);
+    private void writeSourceBlock(long source, Block<T> src) throws Exception {
+        if (src.getValidCount() == 0) {
+            markFree(source);
+            shrinkFile();
+            return;
+        }
+
+        if (src.isFull())
+            markFull(source);
+        else
+            markPartial(source);
+        writeBlock(source, src);
     }
 
 
-    public void addToFreeList(long address) {
-        if (!freeBlocks.contains(address)) {
-            freeBlocks.add(address);
+    public void shrinkFile() throws Exception {
+        long newSize = storage.length();
+
+        while (newSize >= blockSize && isFree(newSize - blockSize)) {
+            newSize -= blockSize;
         }
+
+        if (newSize == storage.length()) return;
+
+        storage.setLength(newSize);
+        freeSpaceMap.truncate(newSize / blockSize);
+    }
+
+
+    public void addToFreeList(long address) throws Exception {
+        markFree(address);
+    }
+
+    // blok zapisany mimo insert/writeNewBlock (napr. nova primarna skupina) uz nie je volny
+    public void removeFromFreeList(long address) throws Exception {
+        markFull(address);
+    }
+
+    // skratenie suboru bez ohladu na stav blokov - pre subory, ktore si bloky spravuju samy
+    public void truncate(long newLength) throws Exception {
+        storage.setLength(newLength);
+        freeSpaceMap.truncate(newLength / blockSize);
+    }
+
+
+    // zmena stavu bloku v mape volneho miesta (a v subore .fsm, ak ho subor ma)
+    private void markFull(long addr) throws Exception {
+        freeSpaceMap.set(addr / blockSize, FreeSpaceMap.FULL);
+    }
+
+    private void markPartial(long addr) throws Exception {
+        freeSpaceMap.set(addr / blockSize, FreeSpaceMap.PARTIAL);
+    }
+
+    private void markFree(long addr) throws Exception {
+        freeSpaceMap.set(addr / blockSize, FreeSpaceMap.FREE);
     }
 
     public int getBlockFactor() {
         return blockFactor;
     }
 
+    public BlockFormat getFormat() {
+        return format;
+    }
+
+    public BlockLayout getLayout() {
+        return layout;
+    }
+
+    public IBlockStorage getStorage() {
+        return storage;
+    }
+
+    // cache blokov pred uloziskom s rozpoctom capacityBytes
+    public void enableCache(int capacityBytes) throws Exception {
+        checkNotLogged();
+        if (storage instanceof WriteBehindStorage) {
+            throw new IllegalStateException("Cache treba zapnut pred odlozenym zapisom");
+        }
+        if (storage instanceof CachedStorage) {
+            storage.flush();
+            storage = ((CachedStorage) storage).getInner();
+        }
+        storage = new CachedStorage(storage, blockSize, capacityBytes);
+    }
+
+    // zapisy blokov idu na disk vo vlakne na pozadi, flush() na ne pocka
+    public void enableWriteBehind(int maxPendingBlocks) throws Exception {
+        checkNotLogged();
+        storage = new WriteBehindStorage(storage, blockSize, maxPendingBlocks);
+    }
+
+    // cache moze byt aj pod logom a odlozenym zapisom
+    public CachedStorage getCache() {
+        IBlockStorage s = belowLog();
+        if (s instanceof WriteBehindStorage) {
+            s = ((WriteBehindStorage) s).getInner();
+        }
+        return (s instanceof CachedStorage) ? (CachedStorage) s : null;
+    }
+
+    // ulozisko pod logom, bez logu samotne ulozisko
+    private IBlockStorage belowLog() {
+        return (storage instanceof LoggedStorage) ? ((LoggedStorage) storage).getInner() : storage;
+    }
+
+    // zapise zmeny z logu a zmenene bloky z cache
+    public void flush() throws Exception {
+        storage.flush();
+    }
+
+    // blok ostane v cache, kym sa nezavola unpinBlock, bez cache nerobi nic
+    // pod odlozenym zapisom ide cez WriteBehindStorage, ktory cache zdiela s vlaknom zapisovaca
+    public void pinBlock(long addr) throws Exception {
+        IBlockStorage s = belowLog();
+        if (s instanceof WriteBehindStorage) {
+            ((WriteBehindStorage) s).pin(addr);
+        } else if (s instanceof CachedStorage) {
+            ((CachedStorage) s).pin(addr);
+        }
+    }
+
+    public void unpinBlock(long addr) {
+        IBlockStorage s = belowLog();
+        if (s instanceof WriteBehindStorage) {
+            ((WriteBehindStorage) s).unpin(addr);
+        } else if (s instanceof CachedStorage) {
+            ((CachedStorage) s).unpin(addr);
+        }
+    }
+
+    private void checkStableSlots() {
+        if (!format.hasStableSlots()) {
+            throw new IllegalStateException("RecordId vyzaduje format so stabilnymi slotmi, subor ma " + format);
+        }
+    }
+
+    private void checkNotLogged() {
+        if (log != null) {
+            throw new IllegalStateException("Log treba zapnut az po cache a odlozenom zapise");
+        }
+    }
+
+    // zmeny blokov a mapy volneho miesta idu cez vlastny log path.wal,
+    // pri otvoreni sa z neho obnovia operacie dokoncene pred vypadkom
+    public void enableWal(Durability durability) throws Exception {
+        if (durability == Durability.NONE || log != null) return;
+
+        attachLog(new WriteAheadLog(path + ".wal", durability));
+        ownsLog = true;
+        if (log.recover() > 0) {
+            reloadAfterRecovery();
+        }
+    }
+
+    // spolocny log viacerych suborov (LinearHashFile), operacie uzatvara vlastnik logu
+    void attachLog(WriteAheadLog log) throws Exception {
+        this.log = log;
+        this.storage = new LoggedStorage(log, storage, blockSize);
+        if (metaPath != null) {
+            freeSpaceMap.attachLog(log);
+        }
+    }
+
+    void reloadAfterRecovery() throws Exception {
+        ((LoggedStorage) storage).refreshLength();
+        if (metaPath != null) {
+            freeSpaceMap.reload();
+        }
+    }
+
+    private void commitOperation() throws Exception {
+        if (ownsLog) {
+            log.commit();
+        }
+    }
+
+    public WriteAheadLog getLog() {
+        return log;
+    }
+
 
 
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package DataStructures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// ulozisko, z ktoreho HeapFile cita a do ktoreho zapisuje cele bloky na absolutnych adresach
+public interface IBlockStorage {
+
+    // naplni cely buffer (0 .. capacity) od adresy addr, za koncom suboru su nuly
+    void read(long addr, ByteBuffer buffer) throws IOException;
+
+    // zapise cely buffer (0 .. capacity) na adresu addr, subor sa podla potreby predlzi
+    void write(long addr, ByteBuffer buffer) throws IOException;
+
+    // priamy pohlad na bajty bloku bez kopirovania, null ak ho ulozisko nevie poskytnut
+    default ByteBuffer view(long addr, int size) throws IOException {
+        return null;
+    }
+
+    // read() a view() mozu volat viacere vlakna naraz, ak sa subor medzitym nemeni
+    default boolean supportsConcurrentReads() {
+        return false;
+    }
+
+    long length() throws IOException;
+
+    void setLength(long length) throws IOException;
+
+    // zapise vsetko, co drzi ulozisko v pamati
+    default void flush() throws IOException {
+    }
+
+    void close() throws IOException;
+}
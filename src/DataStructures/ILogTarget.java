@@ -0,0 +1,17 @@
+package DataStructures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// subor, ktoreho zmeny idu cez WriteAheadLog - log do neho zmeny aplikuje po zapise do logu
+// a pri obnove po vypadku
+public interface ILogTarget {
+
+    // zapise data (0 .. capacity) na poziciu offset
+    void redoWrite(long offset, ByteBuffer data) throws IOException;
+
+    void redoLength(long length) throws IOException;
+
+    // vynuti zapisane zmeny na disk
+    void force() throws IOException;
+}
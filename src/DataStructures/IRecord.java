@@ -1,18 +1,94 @@
 package DataStructures;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
+// zaznam implementuje aspon jedno z: getLayout(), writeTo/readFrom alebo getBytes/fromBytes
+// ostatne sa dopocitaju cez predvolene metody, bez ziadneho z nich vyhodia IllegalStateException
 public interface IRecord<T> {
     boolean isEqual(T data);
     int getSize();
 
-    ArrayList<Byte> getBytes();
+    default ArrayList<Byte> getBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(getSize());
+        writeTo(buffer, 0);
 
-    void fromBytes(ArrayList<Byte> byteArray);
+        byte[] raw = buffer.array();
+        ArrayList<Byte> out = new ArrayList<>(raw.length);
+        for (byte b : raw) out.add(b);
+        return out;
+    }
+
+    default void fromBytes(ArrayList<Byte> byteArray) {
+        byte[] raw = new byte[byteArray.size()];
+        for (int i = 0; i < byteArray.size(); i++) raw[i] = byteArray.get(i);
+
+        readFrom(ByteBuffer.wrap(raw), 0);
+    }
 
     int getHashCode();
 
     T createEmpty();
 
+    // rozlozenie zaznamu, ak ho zaznam popisuje cez RecordLayout
+    default RecordLayout<T> getLayout() {
+        return null;
+    }
+
+    // zapise presne getSize() bajtov od pozicie offset, poziciu buffera nemeni
+    @SuppressWarnings("unchecked")
+    default void writeTo(ByteBuffer buffer, int offset) {
+        RecordLayout<T> layout = getLayout();
+        if (layout != null) {
+            layout.write((T) this, buffer, offset);
+            return;
+        }
+
+        requireOverride(this, RecordOverrides.GET_BYTES);
+        ArrayList<Byte> bytes = getBytes();
+        for (int i = 0; i < bytes.size(); i++) {
+            buffer.put(offset + i, bytes.get(i));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    default void readFrom(ByteBuffer buffer, int offset) {
+        RecordLayout<T> layout = getLayout();
+        if (layout != null) {
+            layout.read((T) this, buffer, offset);
+            return;
+        }
+
+        requireOverride(this, RecordOverrides.FROM_BYTES);
+        int size = getSize();
+        ArrayList<Byte> bytes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            bytes.add(buffer.get(offset + i));
+        }
+        fromBytes(bytes);
+    }
+
+    // predvolene getBytes/writeTo a fromBytes/readFrom sa volaju navzajom
+    private static void requireOverride(Object record, ClassValue<Boolean> overridden) {
+        if (!overridden.get(record.getClass())) {
+            throw new IllegalStateException(record.getClass().getSimpleName()
+                    + " musi implementovat getLayout(), writeTo/readFrom alebo getBytes/fromBytes");
+        }
+    }
+
+    // kluc ako pevny rozsah bajtov v zakodovanom zazname, -1 ak ho zaznam nema
+    // zhoda bajtov v tomto rozsahu musi znamenat isEqual() == true
+    default int getKeyOffset() {
+        return -1;
+    }
+
+    default int getKeyLength() {
+        return 0;
+    }
+
+    // staci zapisat iba bajty kluca (offset + getKeyOffset()), zvysok buffera sa nepouzije
+    default void writeKeyTo(ByteBuffer buffer, int offset) {
+        writeTo(buffer, offset);
+    }
 
 }
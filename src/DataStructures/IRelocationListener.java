@@ -0,0 +1,12 @@
+package DataStructures;
+
+// oznamenie o presune zaznamu medzi blokmi HeapFile (napr. pri compact),
+// aby si externy index mohol opravit ulozenu adresu
+public interface IRelocationListener<T> {
+    void relocated(T record, long oldAddr, long newAddr) throws Exception;
+
+    // index nad RecordId potrebuje aj novy slot zaznamu
+    default void relocated(T record, RecordId oldId, RecordId newId) throws Exception {
+        relocated(record, oldId.getAddress(), newId.getAddress());
+    }
+}
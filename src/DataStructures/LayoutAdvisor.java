@@ -0,0 +1,127 @@
+package DataStructures;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// porovnanie velkosti blokov pre dany zaznam a format
+// pre kazdu velkost: blockFactor, nevyuzite bajty plneho bloku a ocakavany pocet stranok OS
+// precitanych pri vyhladani zaznamu v skupine s bucketRecords zaznamami (primarny blok + retazec)
+//
+// kandidati su mocniny dvoch od 64 B po 4 stranky, vsetci s hlavickou na prvej stranke
+public class LayoutAdvisor {
+
+    public static final int MIN_BLOCK_SIZE = 64;
+    public static final int MAX_PAGES_PER_BLOCK = 4;
+
+    public static class Candidate {
+        private final BlockLayout layout;
+        private final int blockFactor;
+        private final int wastedBytes;
+        private final double pagesPerBlock;
+        private final double expectedIo;
+
+        private Candidate(BlockLayout layout, int blockFactor, int wastedBytes, double pagesPerBlock, double expectedIo) {
+            this.layout = layout;
+            this.blockFactor = blockFactor;
+            this.wastedBytes = wastedBytes;
+            this.pagesPerBlock = pagesPerBlock;
+            this.expectedIo = expectedIo;
+        }
+
+        public BlockLayout getLayout() {
+            return layout;
+        }
+
+        public int getBlockSize() {
+            return layout.getBlockSize();
+        }
+
+        public int getBlockFactor() {
+            return blockFactor;
+        }
+
+        public int getWastedBytes() {
+            return wastedBytes;
+        }
+
+        public double getPagesPerBlock() {
+            return pagesPerBlock;
+        }
+
+        // ocakavany pocet precitanych stranok na jedno vyhladanie
+        public double getExpectedIo() {
+            return expectedIo;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("block=%d B, blockFactor=%d, wasted=%d B, pages/block=%.2f, io/lookup=%.2f",
+                    getBlockSize(), blockFactor, wastedBytes, pagesPerBlock, expectedIo);
+        }
+    }
+
+    private final IRecord<?> prototype;
+    private final BlockFormat format;
+    private final int pageSize;
+
+    public LayoutAdvisor(IRecord<?> prototype, BlockFormat format, int pageSize) {
+        this.prototype = prototype;
+        this.format = format;
+        this.pageSize = pageSize;
+    }
+
+    // bucketRecords <= 0 - vyhladanie cita jeden blok (HeapFile.get podla adresy)
+    public List<Candidate> candidates(double bucketRecords) {
+        ArrayList<Candidate> result = new ArrayList<>();
+        for (int size = MIN_BLOCK_SIZE; size <= MAX_PAGES_PER_BLOCK * pageSize; size *= 2) {
+            Candidate c = evaluate(BlockLayout.withHeaderPage(size, pageSize), bucketRecords);
+            if (c != null) {
+                result.add(c);
+            }
+        }
+        return result;
+    }
+
+    // najmenej stranok na vyhladanie, pri zhode mensi blok (menej zapisovanych bajtov)
+    public Candidate recommend(double bucketRecords) {
+        Candidate best = null;
+        for (Candidate c : candidates(bucketRecords)) {
+            if (best == null || c.expectedIo < best.expectedIo - 1e-9) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    // aj pre lubovolne rozlozenie, null ak sa do bloku nezmesti ani jeden zaznam
+    public Candidate evaluate(BlockLayout layout, double bucketRecords) {
+        int blockSize = layout.getBlockSize();
+        if ((format.isSlotted() && blockSize > 0xFFFF) || blockSize < format.minBlockSize(prototype)) {
+            return null;
+        }
+
+        int blockFactor = format.blockFactor(blockSize, prototype);
+        if (blockFactor <= 0) {
+            return null;
+        }
+
+        int wasted = blockSize - format.blockOverhead(prototype) - format.bitmapSize(blockFactor)
+                - blockFactor * format.recordFootprint(prototype);
+        double pages = layout.pagesPerBlock();
+        return new Candidate(layout, blockFactor, wasted, pages, expectedBlocks(blockFactor, bucketRecords) * pages);
+    }
+
+    // zaznam na pozicii j v skupine lezi v bloku j / blockFactor retazca, pozicie su rovnako pravdepodobne
+    private static double expectedBlocks(int blockFactor, double bucketRecords) {
+        long n = Math.round(bucketRecords);
+        if (n <= 0) {
+            return 1;
+        }
+
+        long blocks = 0;
+        for (long j = 0; j < n; j++) {
+            blocks += j / blockFactor + 1;
+        }
+        return (double) blocks / n;
+    }
+}
@@ -1,6 +1,13 @@
 package DataStructures;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 public class LinearHashFile<T extends IRecord<T>> {
@@ -8,8 +15,10 @@ public class LinearHashFile<T extends IRecord<T>> {
     private boolean useDensity;
     private boolean useBucketSize;
     private boolean useOverflowCount;
+    private boolean useDensityMerge;
 
     private double maxDensity;
+    private double minDensity;
     private int maxBucketSize;
     private int maxOverflowBlocks;
     private ArrayList<Integer> bucketRecordCount;
@@ -23,9 +32,46 @@ public class LinearHashFile<T extends IRecord<T>> {
     private int totalRecords;
 
     private String metadataPath;
+    private String walPath;
     private T prototype;
 
+    // spolocny log oboch suborov a metadat, metadataTarget - cislo metadat v logu
+    // changedBuckets - skupiny, ktorych pocty sa zmenili v aktualnej operacii
+    private WriteAheadLog log;
+    private int metadataTarget;
+    private TreeSet<Integer> changedBuckets;
+    private boolean recovering;
+
+    // adresar retazcov - adresy preplnujucich blokov skupiny v poradi retazca, null ak nie su zname
+    // drzi sa iba v pamati a meni sa spolu s retazcom (insertIntoOverflow, split)
+    private ArrayList<long[]> overflowChains;
+
     public LinearHashFile(String mainPath, int mainBlockSize, String overflowPath, int overflowBlockSize, int M, T prototype) throws Exception {
+        this(mainPath, mainBlockSize, overflowPath, overflowBlockSize, M, prototype, BlockFormat.fixed());
+    }
+
+    public LinearHashFile(String mainPath, int mainBlockSize, String overflowPath, int overflowBlockSize, int M, T prototype,
+                          BlockFormat format) throws Exception {
+        this(mainPath, mainBlockSize, overflowPath, overflowBlockSize, M, prototype, format,
+                new ChannelStorage(mainPath), new ChannelStorage(overflowPath));
+    }
+
+    // napr. MappedStorage pre primarnu oblast, ktora sa zmesti do pamate
+    public LinearHashFile(String mainPath, int mainBlockSize, String overflowPath, int overflowBlockSize, int M, T prototype,
+                          BlockFormat format, IBlockStorage mainStorage, IBlockStorage overflowStorage) throws Exception {
+        this(mainPath, BlockLayout.plain(mainBlockSize), overflowPath, BlockLayout.plain(overflowBlockSize), M, prototype,
+                format, mainStorage, overflowStorage);
+    }
+
+    // adresy blokov su aj pri rozlozeni s hlavickou od 0, hlavicku skryva HeapFile
+    public LinearHashFile(String mainPath, BlockLayout mainLayout, String overflowPath, BlockLayout overflowLayout, int M,
+                          T prototype, BlockFormat format, IBlockStorage mainStorage, IBlockStorage overflowStorage)
+            throws Exception {
+
+        // skupiny preusporiadavaju zaznamy pri kazdom rozdeleni, RecordId by aj tak neplatili
+        if (format.hasStableSlots()) {
+            throw new IllegalArgumentException("LinearHashFile nepodporuje format so stabilnymi slotmi");
+        }
 
         this.prototype = prototype;
 
@@ -36,6 +82,8 @@ public class LinearHashFile<T extends IRecord<T>> {
         this.totalRecords = 0;
 
         this.metadataPath = mainPath + ".lh.meta";
+        this.walPath = mainPath + ".wal";
+        this.overflowChains = new ArrayList<>();
         bucketRecordCount = new ArrayList<>();
         bucketOverflowCount = new ArrayList<>();
 
@@ -45,8 +93,10 @@ public class LinearHashFile<T extends IRecord<T>> {
         }
 
 
-        this.mainFile = new HeapFile<>(mainPath, mainBlockSize, prototype, false);
-        this.overflowFile = new HeapFile<>(overflowPath, overflowBlockSize, prototype, true);
+        // aj preplnovaci subor ma vlastnu mapu volneho miesta (.fsm), inak by bloky uvolnene
+        // pri delete, split a merge po znovuotvoreni ostali navzdy nevyuzite
+        this.mainFile = new HeapFile<>(mainPath, mainLayout, prototype, false, format, mainStorage);
+        this.overflowFile = new HeapFile<>(overflowPath, overflowLayout, prototype, false, format, overflowStorage);
 
         loadMetadata();
         if (mainFile.getFileLength() == 0) {
@@ -72,36 +122,59 @@ public class LinearHashFile<T extends IRecord<T>> {
 
 
     public void insert(T record) throws Exception {
+        insertRecord(record);
+        commitOperation();
+    }
+
+    // insert aj so splitom je v logu jedna operacia
+    private void insertRecord(T record) throws Exception {
 
         int key = record.getHashCode();
         int index = getIndex(key);
 
         long offset = (long) index * mainFile.getBlockSize();
-        Block<T> block = mainFile.readBlock(offset);
 
-        boolean newOverflowBlock = false;
+        // primarny blok sa cita aj v insertIntoOverflow, pri cache ostane medzitym v pamati
+        mainFile.pinBlock(offset);
+        try {
+            Block<T> block = mainFile.borrowBlock(offset);
+
+            boolean newOverflowBlock = false;
+            boolean inserted = false;
 
-        if (block.getValidCount() < mainFile.getBlockFactor()) {
+            try {
+                if (block.hasSpaceFor(record)) {
 
-            block.getList().set(block.getValidCount(), record);
-            block.setValidCount(block.getValidCount() + 1);
+                    block.getList().set(block.getValidCount(), record);
+                    block.setValidCount(block.getValidCount() + 1);
 
-            mainFile.writeBlock(offset, block);
+                    mainFile.writeBlock(offset, block);
+                    inserted = true;
+                }
+            } finally {
+                mainFile.releaseBlock(block);
+            }
 
-            bucketRecordCount.set(index, bucketRecordCount.get(index) + 1);
-            totalRecords++;
+            if (inserted) {
 
-        } else {
+                bucketRecordCount.set(index, bucketRecordCount.get(index) + 1);
+                totalRecords++;
 
-            newOverflowBlock = insertIntoOverflow(index, record);
+            } else {
 
-            bucketRecordCount.set(index, bucketRecordCount.get(index) + 1);
-            if (newOverflowBlock) {
-                bucketOverflowCount.set(index, bucketOverflowCount.get(index) + 1);
-            }
+                newOverflowBlock = insertIntoOverflow(index, record);
+
+                bucketRecordCount.set(index, bucketRecordCount.get(index) + 1);
+                if (newOverflowBlock) {
+                    bucketOverflowCount.set(index, bucketOverflowCount.get(index) + 1);
+                }
 
-            totalRecords++;
+                totalRecords++;
+            }
+        } finally {
+            mainFile.unpinBlock(offset);
         }
+        bucketChanged(index);
 
         System.out.println("INSERT -> bucket addr=" + offset);
 
@@ -117,56 +190,106 @@ public class LinearHashFile<T extends IRecord<T>> {
     private boolean insertIntoOverflow(int index, T record) throws Exception {
 
         long primaryAddr = (long) index * mainFile.getBlockSize();
-        Block<T> primary = mainFile.readBlock(primaryAddr);
-        long nextAddr = primary.getNext();
-
+        Block<T> primary = mainFile.borrowBlock(primaryAddr);
+        long nextAddr;
 
-        if (nextAddr == -1) {
-            Block<T> newBlock = overflowFile.createEmptyBlock();
-            newBlock.getList().set(0, record);
-            newBlock.setValidCount(1);
-            newBlock.setNext(-1);
+        try {
+            nextAddr = primary.getNext();
 
-            long newAddr = overflowFile.writeNewBlock(newBlock);
+            if (nextAddr == -1) {
+                long newAddr = appendOverflowBlock(record);
 
-            primary.setNext(newAddr);
-            mainFile.writeBlock(primaryAddr, primary);
+                primary.setNext(newAddr);
+                mainFile.writeBlock(primaryAddr, primary);
+                setChain(index, new long[] {newAddr});
 
-            return true;
+                return true;
+            }
+        } finally {
+            mainFile.releaseBlock(primary);
         }
 
-        long currentAddr = nextAddr;
-        Block<T> current = overflowFile.readBlock(currentAddr);
+        ArrayList<Block<T>> chain = readOverflowChain(index, nextAddr);
+        long[] addresses = overflowChains.get(index);
 
-        while (true) {
+        for (int c = 0; c < chain.size(); c++) {
+            Block<T> current = chain.get(c);
 
-            if (current.getValidCount() < overflowFile.getBlockFactor()) {
+            if (current.hasSpaceFor(record)) {
 
                 current.getList().set(current.getValidCount(), record);
                 current.setValidCount(current.getValidCount() + 1);
 
-                overflowFile.writeBlock(currentAddr, current);
+                overflowFile.writeBlock(addresses[c], current);
 
                 return false;
             }
+        }
+
+        long newAddr = appendOverflowBlock(record);
 
-            if (current.getNext() == -1) {
+        Block<T> last = chain.get(chain.size() - 1);
+        last.setNext(newAddr);
+        overflowFile.writeBlock(addresses[addresses.length - 1], last);
 
-                Block<T> newBlock = overflowFile.createEmptyBlock();
-                newBlock.getList().set(0, record);
-                newBlock.setValidCount(1);
-                newBlock.setNext(-1);
+        long[] extended = Arrays.copyOf(addresses, addresses.length + 1);
+        extended[addresses.length] = newAddr;
+        setChain(index, extended);
 
-                long newAddr = overflowFile.writeNewBlock(newBlock);
+        return true;
+    }
 
-                current.setNext(newAddr);
-                overflowFile.writeBlock(currentAddr, current);
+    // bloky retazca skupiny index, firstAddr je next jej primarneho bloku
+    // so znamymi adresami sa precitaju jednou davkou cez readBlocks, inak postupne po getNext()
+    // a adresy sa zapamataju - po navrate su v overflowChains.get(index)
+    private ArrayList<Block<T>> readOverflowChain(int index, long firstAddr) throws Exception {
+        long[] known = knownChain(index, firstAddr);
+        if (known != null) {
+            return overflowFile.readBlocks(known);
+        }
 
-                return true;
-            }
+        ArrayList<Block<T>> blocks = new ArrayList<>();
+        ArrayList<Long> addresses = new ArrayList<>();
+        for (long addr = firstAddr; addr != -1; ) {
+            Block<T> block = overflowFile.readBlock(addr);
+            blocks.add(block);
+            addresses.add(addr);
+            addr = block.getNext();
+        }
 
-            currentAddr = current.getNext();
-            current = overflowFile.readBlock(currentAddr);
+        long[] chain = new long[addresses.size()];
+        for (int i = 0; i < chain.length; i++) {
+            chain[i] = addresses.get(i);
+        }
+        setChain(index, chain);
+        return blocks;
+    }
+
+    // adresy retazca z adresara, ak zacina na firstAddr, inak null
+    private long[] knownChain(int index, long firstAddr) {
+        if (index >= overflowChains.size()) return null;
+        long[] chain = overflowChains.get(index);
+        return (chain != null && chain[0] == firstAddr) ? chain : null;
+    }
+
+    // prazdny retazec sa neuklada
+    private void setChain(int index, long[] chain) {
+        while (overflowChains.size() <= index) {
+            overflowChains.add(null);
+        }
+        overflowChains.set(index, (chain.length == 0) ? null : chain);
+    }
+
+    private long appendOverflowBlock(T record) throws Exception {
+        Block<T> newBlock = overflowFile.borrowEmptyBlock();
+        try {
+            newBlock.getList().set(0, record);
+            newBlock.setValidCount(1);
+            newBlock.setNext(-1);
+
+            return overflowFile.writeNewBlock(newBlock);
+        } finally {
+            overflowFile.releaseBlock(newBlock);
         }
     }
 
@@ -177,28 +300,48 @@ public class LinearHashFile<T extends IRecord<T>> {
         int index = getIndex(key);
 
         long primaryAddr = (long) index * mainFile.getBlockSize();
-        Block<T> block = mainFile.readBlock(primaryAddr);
+        long nextAddr;
 
-        for (int i = 0; i < block.getValidCount(); i++) {
-            T record = block.getList().get(i);
-            if (record.isEqual(data)){
+        Block<T> primary = mainFile.borrowBlock(primaryAddr);
+        try {
+            int i = primary.indexOf(data);
+            if (i != -1) {
+                T record = primary.getList().get(i);
+                primary.detach(i);
                 return record;
             }
-        }
 
-        long nextAddr = block.getNext();
+            nextAddr = primary.getNext();
+        } finally {
+            mainFile.releaseBlock(primary);
+        }
 
-        while (nextAddr != -1) {
-            Block<T> overflowBlock = overflowFile.readBlock(nextAddr);
+        if (nextAddr == -1) {
+            return null;
+        }
 
-            for (int i = 0; i < overflowBlock.getValidCount(); i++) {
-                T record = overflowBlock.getList().get(i);
-                if (record.isEqual(data)) {
+        // jediny preplnujuci blok sa cita do bloku z poolu ako primarny, davka by iba alokovala
+        long[] known = knownChain(index, nextAddr);
+        if (known != null && known.length == 1) {
+            Block<T> block = overflowFile.borrowBlock(nextAddr);
+            try {
+                int i = block.indexOf(data);
+                if (i != -1) {
+                    T record = block.getList().get(i);
+                    block.detach(i);
                     return record;
                 }
+                return null;
+            } finally {
+                overflowFile.releaseBlock(block);
             }
+        }
 
-            nextAddr = overflowBlock.getNext();
+        for (Block<T> block : readOverflowChain(index, nextAddr)) {
+            int i = block.indexOf(data);
+            if (i != -1) {
+                return block.getList().get(i);
+            }
         }
 
         return null;
@@ -206,6 +349,12 @@ public class LinearHashFile<T extends IRecord<T>> {
 
 
     public boolean update(T pattern, T newRecord) throws Exception {
+        boolean updated = updateRecord(pattern, newRecord);
+        commitOperation();
+        return updated;
+    }
+
+    private boolean updateRecord(T pattern, T newRecord) throws Exception {
 
         int key = pattern.getHashCode();
         int index = getIndex(key);
@@ -218,41 +367,139 @@ public class LinearHashFile<T extends IRecord<T>> {
         }
 
         long nextAddr = primary.getNext();
+        if (nextAddr == -1) {
+            return false;
+        }
 
-        while (nextAddr != -1) {
-
-            Block<T> overflowBlock = overflowFile.readBlock(nextAddr);
+        ArrayList<Block<T>> chain = readOverflowChain(index, nextAddr);
+        long[] addresses = overflowChains.get(index);
 
-            if (updateFromBlock(overflowFile, nextAddr, overflowBlock, pattern, newRecord)) {
+        for (int c = 0; c < chain.size(); c++) {
+            if (updateFromBlock(overflowFile, addresses[c], chain.get(c), pattern, newRecord)) {
                 return true;
             }
-
-            nextAddr = overflowBlock.getNext();
         }
 
         return false;
     }
 
-    public boolean delete(T pattern) throws Exception{return false;}
+    public boolean delete(T pattern) throws Exception {
+        boolean deleted = deleteRecord(pattern);
+        commitOperation();
+        return deleted;
+    }
 
-    private boolean updateFromBlock(HeapFile<T> file, long addr, Block<T> block,
-                                    T pattern, T newRecord) throws Exception {
+    // delete aj so zlucenim skupin je v logu jedna operacia
+    private boolean deleteRecord(T pattern) throws Exception {
+        if (!removeRecord(pattern)) {
+            return false;
+        }
 
-        for (int i = 0; i < block.getValidCount(); i++) {
+        if (shouldMerge()) {
+            merge();
+        }
+        return true;
+    }
 
-            T record = block.getList().get(i);
+    // diera po zazname sa zaplni poslednym zaznamom skupiny, takze nezaplneny ostava iba koniec retazca
+    // prazdne bloky na konci retazca idu do zoznamu volnych blokov preplnujuceho suboru
+    private boolean removeRecord(T pattern) throws Exception {
 
-            if (record.isEqual(pattern)) {
+        int index = getIndex(pattern.getHashCode());
+        long primaryAddr = (long) index * mainFile.getBlockSize();
 
-                block.getList().set(i, newRecord);
+        ArrayList<Block<T>> blocks = new ArrayList<>();
+        blocks.add(mainFile.readBlock(primaryAddr));
 
-                file.writeBlock(addr, block);
+        long[] addresses = new long[0];
+        if (blocks.get(0).getNext() != -1) {
+            blocks.addAll(readOverflowChain(index, blocks.get(0).getNext()));
+            addresses = overflowChains.get(index);
+        }
 
-                return true;
+        int position = -1;
+        int slot = -1;
+        for (int p = 0; p < blocks.size() && position == -1; p++) {
+            slot = blocks.get(p).indexOf(pattern);
+            if (slot != -1) {
+                position = p;
             }
         }
 
-        return false;
+        if (position == -1) {
+            return false;
+        }
+
+        boolean[] changed = new boolean[blocks.size()];
+
+        Block<T> holder = blocks.get(position);
+        int last = holder.getValidCount() - 1;
+        holder.getList().set(slot, holder.getList().get(last));
+        holder.getList().set(last, prototype.createEmpty());
+        holder.setValidCount(last);
+        changed[position] = true;
+
+        int tailPosition = blocks.size() - 1;
+        if (tailPosition > position) {
+            Block<T> tail = blocks.get(tailPosition);
+            int from = tail.getValidCount() - 1;
+            if (holder.hasSpaceFor(tail, from)) {
+                holder.appendFrom(tail, from);
+                tail.setValidCount(from);
+                changed[tailPosition] = true;
+            }
+        }
+
+        // primarny blok ostava aj prazdny
+        int length = blocks.size();
+        while (length > 1 && blocks.get(length - 1).getValidCount() == 0) {
+            length--;
+            overflowFile.addToFreeList(addresses[length - 1]);
+            blocks.get(length - 1).setNext(-1);
+            changed[length - 1] = true;
+        }
+
+        for (int p = 0; p < length; p++) {
+            if (changed[p]) {
+                HeapFile<T> file = (p == 0) ? mainFile : overflowFile;
+                file.writeBlock((p == 0) ? primaryAddr : addresses[p - 1], blocks.get(p));
+            }
+        }
+
+        if (length < blocks.size()) {
+            setChain(index, Arrays.copyOf(addresses, length - 1));
+            overflowFile.shrinkFile();
+        }
+
+        bucketRecordCount.set(index, bucketRecordCount.get(index) - 1);
+        bucketOverflowCount.set(index, length - 1);
+        bucketChanged(index);
+        totalRecords--;
+        return true;
+    }
+
+    private boolean updateFromBlock(HeapFile<T> file, long addr, Block<T> block,
+                                    T pattern, T newRecord) throws Exception {
+
+        int i = block.indexOf(pattern);
+
+        if (i == -1) {
+            return false;
+        }
+
+        if (!block.canReplace(i, newRecord)) {
+            // dlhsi zaznam sa uz do bloku nezmesti - vyberie sa ako pri delete (retazec sa zhutni
+            // a prazdny blok odpoji) a vlozi nanovo
+            removeRecord(pattern);
+            insertRecord(newRecord);
+            return true;
+        }
+
+        block.getList().set(i, newRecord);
+
+        file.writeBlock(addr, block);
+
+        return true;
     }
 
 
@@ -308,146 +555,188 @@ public class LinearHashFile<T extends IRecord<T>> {
             bucketOverflowCount.add(0);
         }
 
-        ArrayList<T> allRecordsFromBucket = new ArrayList<>();
+        // zaznamy sa presuvaju priamo medzi blokmi - pri ulozenych hashoch a lenivych blokoch
+        // sa pri presune iba kopiruju bajty a nic sa nedekoduje
+        ArrayList<Block<T>> sourceBlocks = new ArrayList<>();
         Block<T> oldPrimaryBlock = mainFile.readBlock(oldBucketAddress);
-
-        for (int i = 0; i < oldPrimaryBlock.getValidCount(); i++) {
-            allRecordsFromBucket.add(oldPrimaryBlock.getList().get(i));
-        }
+        sourceBlocks.add(oldPrimaryBlock);
 
         ArrayList<Long> originalOverflowAddresses = new ArrayList<>();
-        long currentOverflowAddress = oldPrimaryBlock.getNext();
-
-        while (currentOverflowAddress != -1) {
-            originalOverflowAddresses.add(currentOverflowAddress);
-            Block<T> overflowBlock = overflowFile.readBlock(currentOverflowAddress);
-
-            for (int i = 0; i < overflowBlock.getValidCount(); i++) {
-                allRecordsFromBucket.add(overflowBlock.getList().get(i));
+        if (oldPrimaryBlock.getNext() != -1) {
+            sourceBlocks.addAll(readOverflowChain(splitBucketIndex, oldPrimaryBlock.getNext()));
+            for (long address : overflowChains.get(splitBucketIndex)) {
+                originalOverflowAddresses.add(address);
             }
-            currentOverflowAddress = overflowBlock.getNext();
         }
 
         Block<T> newPrimaryForOldBucket = mainFile.createEmptyBlock();
         Block<T> newPrimaryForNewBucket = mainFile.createEmptyBlock();
 
-        ArrayList<T> overflowRecordsForOldBucket = new ArrayList<>();
-        ArrayList<T> overflowRecordsForNewBucket = new ArrayList<>();
+        ArrayList<Block<T>> oldBucketOverflowBlocks = new ArrayList<>();
 
-        int primaryBlockFactor = mainFile.getBlockFactor();
-        int overflowBlockFactor = overflowFile.getBlockFactor();
+        ArrayList<Block<T>> newBucketOverflowBlocks = new ArrayList<>();
 
-        for (T record : allRecordsFromBucket) {
-            int targetBucketIndex = record.getHashCode() % newDivisor;
-            if (targetBucketIndex < 0) targetBucketIndex += newDivisor;
+        for (Block<T> source : sourceBlocks) {
+            for (int i = 0; i < source.getValidCount(); i++) {
+                int targetBucketIndex = source.getHash(i) % newDivisor;
+                if (targetBucketIndex < 0) targetBucketIndex += newDivisor;
 
-            if (targetBucketIndex == splitBucketIndex) {
-                if (newPrimaryForOldBucket.getValidCount() < primaryBlockFactor) {
-                    newPrimaryForOldBucket.getList().set(newPrimaryForOldBucket.getValidCount(), record);
-                    newPrimaryForOldBucket.setValidCount(newPrimaryForOldBucket.getValidCount() + 1);
-                } else {
-                    overflowRecordsForOldBucket.add(record);
-                }
-            } else {
-                if (newPrimaryForNewBucket.getValidCount() < primaryBlockFactor) {
-                    newPrimaryForNewBucket.getList().set(newPrimaryForNewBucket.getValidCount(), record);
-                    newPrimaryForNewBucket.setValidCount(newPrimaryForNewBucket.getValidCount() + 1);
+                if (targetBucketIndex == splitBucketIndex) {
+                    moveSlot(source, i, newPrimaryForOldBucket, oldBucketOverflowBlocks);
                 } else {
-                    overflowRecordsForNewBucket.add(record);
+                    moveSlot(source, i, newPrimaryForNewBucket, newBucketOverflowBlocks);
                 }
             }
         }
 
-        bucketRecordCount.set(splitBucketIndex, newPrimaryForOldBucket.getValidCount() + overflowRecordsForOldBucket.size());
-        bucketRecordCount.set(newBucketIndex, newPrimaryForNewBucket.getValidCount() + overflowRecordsForNewBucket.size());
+        bucketRecordCount.set(splitBucketIndex, countRecords(newPrimaryForOldBucket, oldBucketOverflowBlocks));
+        bucketRecordCount.set(newBucketIndex, countRecords(newPrimaryForNewBucket, newBucketOverflowBlocks));
 
-        bucketOverflowCount.set(splitBucketIndex, (overflowRecordsForOldBucket.size() + overflowBlockFactor - 1) / overflowBlockFactor);
-        bucketOverflowCount.set(newBucketIndex, (overflowRecordsForNewBucket.size() + overflowBlockFactor - 1) / overflowBlockFactor);
+        bucketOverflowCount.set(splitBucketIndex, oldBucketOverflowBlocks.size());
+        bucketOverflowCount.set(newBucketIndex, newBucketOverflowBlocks.size());
+        bucketChanged(splitBucketIndex);
+        bucketChanged(newBucketIndex);
 
-        ArrayList<Block<T>> oldBucketOverflowBlocks = new ArrayList<>();
-        ArrayList<Long> oldBucketOverflowAddresses = new ArrayList<>();
+        // povodne preplnujuce bloky dostane najprv stara skupina, potom nova, dalsie bloky
+        // idu cez zoznam volnych blokov preplnovacieho suboru
+        int oldReused = Math.min(oldBucketOverflowBlocks.size(), originalOverflowAddresses.size());
+        int newReused = Math.min(newBucketOverflowBlocks.size(), originalOverflowAddresses.size() - oldReused);
+        long[] oldBucketOverflowAddresses = writeChain(oldBucketOverflowBlocks,
+                originalOverflowAddresses.subList(0, oldReused));
+        long[] newBucketOverflowAddresses = writeChain(newBucketOverflowBlocks,
+                originalOverflowAddresses.subList(oldReused, oldReused + newReused));
 
-        ArrayList<Block<T>> newBucketOverflowBlocks = new ArrayList<>();
-        ArrayList<Long> newBucketOverflowAddresses = new ArrayList<>();
+        newPrimaryForOldBucket.setNext(oldBucketOverflowAddresses.length == 0 ? -1 : oldBucketOverflowAddresses[0]);
+        newPrimaryForNewBucket.setNext(newBucketOverflowAddresses.length == 0 ? -1 : newBucketOverflowAddresses[0]);
 
-        long overflowFileLength = overflowFile.getFileLength();
-        int addressReuseIndex = 0;
-        int additionalBlocksNeeded = 0;
+        mainFile.writeBlock(oldBucketAddress, newPrimaryForOldBucket);
+        mainFile.removeFromFreeList(newBucketAddress);
+        mainFile.writeBlock(newBucketAddress, newPrimaryForNewBucket);
 
-        int recordPosition = 0;
-        while (recordPosition < overflowRecordsForOldBucket.size()) {
-            Block<T> overflowBlock = overflowFile.createEmptyBlock();
-            int recordsInBlock = 0;
+        for (int i = oldReused + newReused; i < originalOverflowAddresses.size(); i++) {
+            overflowFile.addToFreeList(originalOverflowAddresses.get(i));
+        }
 
-            while (recordsInBlock < overflowBlockFactor && recordPosition < overflowRecordsForOldBucket.size()) {
-                overflowBlock.getList().set(recordsInBlock++, overflowRecordsForOldBucket.get(recordPosition++));
-            }
+        setChain(splitBucketIndex, oldBucketOverflowAddresses);
+        setChain(newBucketIndex, newBucketOverflowAddresses);
 
-            overflowBlock.setValidCount(recordsInBlock);
-            overflowBlock.setNext(-1);
+        S++;
+        if (S >= currentLevelSize) {
+            S = 0;
+            u++;
+        }
 
-            long blockAddress = (addressReuseIndex < originalOverflowAddresses.size())
-                    ? originalOverflowAddresses.get(addressReuseIndex++)
-                    : overflowFileLength + (long) (additionalBlocksNeeded++) * blockSize;
+        overflowFile.shrinkFile();
+    }
 
-            oldBucketOverflowBlocks.add(overflowBlock);
-            oldBucketOverflowAddresses.add(blockAddress);
-        }
 
-        for (int i = 0; i < oldBucketOverflowBlocks.size() - 1; i++) {
-            oldBucketOverflowBlocks.get(i).setNext(oldBucketOverflowAddresses.get(i + 1));
-        }
-        newPrimaryForOldBucket.setNext(oldBucketOverflowAddresses.isEmpty() ? -1 : oldBucketOverflowAddresses.get(0));
 
-        recordPosition = 0;
-        while (recordPosition < overflowRecordsForNewBucket.size()) {
-            Block<T> overflowBlock = overflowFile.createEmptyBlock();
-            int recordsInBlock = 0;
+    // opak split() - posledna skupina sa zluci so skupinou, z ktorej vznikla, a primarny subor sa skrati
+    private void merge() throws Exception {
 
-            while (recordsInBlock < overflowBlockFactor && recordPosition < overflowRecordsForNewBucket.size()) {
-                overflowBlock.getList().set(recordsInBlock++, overflowRecordsForNewBucket.get(recordPosition++));
-            }
+        if (S == 0) {
+            u--;
+            S = M * (int) Math.pow(2, u);
+        }
+        S--;
 
-            overflowBlock.setValidCount(recordsInBlock);
-            overflowBlock.setNext(-1);
+        int targetBucketIndex = S;
+        int sourceBucketIndex = S + M * (int) Math.pow(2, u);
 
-            long blockAddress = (addressReuseIndex < originalOverflowAddresses.size())
-                    ? originalOverflowAddresses.get(addressReuseIndex++)
-                    : overflowFileLength + (long) (additionalBlocksNeeded++) * blockSize;
+        long blockSize = mainFile.getBlockSize();
+        long targetAddress = (long) targetBucketIndex * blockSize;
+        long sourceAddress = (long) sourceBucketIndex * blockSize;
 
-            newBucketOverflowBlocks.add(overflowBlock);
-            newBucketOverflowAddresses.add(blockAddress);
+        ArrayList<Block<T>> sourceBlocks = new ArrayList<>();
+        ArrayList<Long> originalOverflowAddresses = new ArrayList<>();
+        for (int index : new int[] {targetBucketIndex, sourceBucketIndex}) {
+            Block<T> primary = mainFile.readBlock((long) index * blockSize);
+            sourceBlocks.add(primary);
+            if (primary.getNext() != -1) {
+                sourceBlocks.addAll(readOverflowChain(index, primary.getNext()));
+                for (long address : overflowChains.get(index)) {
+                    originalOverflowAddresses.add(address);
+                }
+            }
         }
 
-        for (int i = 0; i < newBucketOverflowBlocks.size() - 1; i++) {
-            newBucketOverflowBlocks.get(i).setNext(newBucketOverflowAddresses.get(i + 1));
+        Block<T> mergedPrimary = mainFile.createEmptyBlock();
+        ArrayList<Block<T>> overflowBlocks = new ArrayList<>();
+        for (Block<T> source : sourceBlocks) {
+            for (int i = 0; i < source.getValidCount(); i++) {
+                moveSlot(source, i, mergedPrimary, overflowBlocks);
+            }
         }
-        newPrimaryForNewBucket.setNext(newBucketOverflowAddresses.isEmpty() ? -1 : newBucketOverflowAddresses.get(0));
 
-        mainFile.writeBlock(oldBucketAddress, newPrimaryForOldBucket);
-        mainFile.writeBlock(newBucketAddress, newPrimaryForNewBucket);
+        int reused = Math.min(overflowBlocks.size(), originalOverflowAddresses.size());
+        long[] mergedAddresses = writeChain(overflowBlocks, originalOverflowAddresses.subList(0, reused));
+        mergedPrimary.setNext(mergedAddresses.length == 0 ? -1 : mergedAddresses[0]);
 
-        for (int i = 0; i < oldBucketOverflowBlocks.size(); i++) {
-            overflowFile.writeBlock(oldBucketOverflowAddresses.get(i), oldBucketOverflowBlocks.get(i));
+        for (int i = overflowBlocks.size(); i < originalOverflowAddresses.size(); i++) {
+            overflowFile.addToFreeList(originalOverflowAddresses.get(i));
         }
-        for (int i = 0; i < newBucketOverflowBlocks.size(); i++) {
-            overflowFile.writeBlock(newBucketOverflowAddresses.get(i), newBucketOverflowBlocks.get(i));
+
+        // primarne bloky nikdy nejdu cez zoznam volnych blokov - zdrojova skupina je posledna,
+        // takze sa primarny subor iba skrati
+        mainFile.writeBlock(targetAddress, mergedPrimary);
+        mainFile.truncate(sourceAddress);
+
+        bucketRecordCount.set(targetBucketIndex, countRecords(mergedPrimary, overflowBlocks));
+        bucketOverflowCount.set(targetBucketIndex, overflowBlocks.size());
+        while (bucketRecordCount.size() > sourceBucketIndex) {
+            bucketRecordCount.remove(bucketRecordCount.size() - 1);
+            bucketOverflowCount.remove(bucketOverflowCount.size() - 1);
         }
+        bucketChanged(targetBucketIndex);
+
+        setChain(targetBucketIndex, mergedAddresses);
+        setChain(sourceBucketIndex, new long[0]);
 
-        for (int i = addressReuseIndex; i < originalOverflowAddresses.size(); i++) {
-            long address = originalOverflowAddresses.get(i);
-            overflowFile.addToFreeList(address);
+        overflowFile.shrinkFile();
+    }
+
+    // retazec sa zapisuje od konca, aby bola adresa nasledovnika znama aj pri novom bloku
+    // prve bloky idu na adresy reused, dalsie na najnizsie volne miesto preplnovacieho suboru
+    private long[] writeChain(ArrayList<Block<T>> blocks, List<Long> reused) throws Exception {
+        long[] addresses = new long[blocks.size()];
+        long next = -1;
+        for (int i = blocks.size() - 1; i >= 0; i--) {
+            Block<T> block = blocks.get(i);
+            block.setNext(next);
+            if (i < reused.size()) {
+                next = reused.get(i);
+                overflowFile.writeBlock(next, block);
+            } else {
+                next = overflowFile.writeNewBlock(block);
+            }
+            addresses[i] = next;
         }
+        return addresses;
+    }
 
-        S++;
-        if (S >= currentLevelSize) {
-            S = 0;
-            u++;
+    // zaznam ide do primarneho bloku, inak do posledneho preplnujuceho bloku retazca
+    private void moveSlot(Block<T> source, int index, Block<T> primary, ArrayList<Block<T>> overflowBlocks) {
+        if (primary.hasSpaceFor(source, index)) {
+            primary.appendFrom(source, index);
+            return;
         }
 
-        overflowFile.shrinkFile();
+        Block<T> last = overflowBlocks.isEmpty() ? null : overflowBlocks.get(overflowBlocks.size() - 1);
+        if (last == null || !last.hasSpaceFor(source, index)) {
+            last = overflowFile.createEmptyBlock();
+            last.setNext(-1);
+            overflowBlocks.add(last);
+        }
+        last.appendFrom(source, index);
     }
 
+    private int countRecords(Block<T> primary, ArrayList<Block<T>> overflowBlocks) {
+        int count = primary.getValidCount();
+        for (Block<T> block : overflowBlocks) {
+            count += block.getValidCount();
+        }
+        return count;
+    }
 
 
     public int getM() {
@@ -473,8 +762,27 @@ public class LinearHashFile<T extends IRecord<T>> {
 
 
 
-    private void saveMetadata() throws Exception {
-        PrintWriter pw = new PrintWriter(metadataPath);
+    // s logom sa subor metadat prepisuje pri zapise zmien z logu, preto sa vynucuje na disk
+    // zapisuje sa do docasneho suboru, ktory sa atomicky premenuje na subor metadat -
+    // vypadok uprostred zapisu tak necha bud stare, alebo nove metadata, nikdy nie rozpisane
+    private void saveMetadata() throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(metadataBytes());
+        Path temp = Path.of(metadataPath + ".tmp");
+        try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                ch.write(data);
+            }
+            if (log != null) {
+                ch.force(false);
+            }
+        }
+        Files.move(temp, Path.of(metadataPath), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private byte[] metadataBytes() {
+        StringWriter text = new StringWriter();
+        PrintWriter pw = new PrintWriter(text);
 
         pw.println(M);
         pw.println(u);
@@ -493,6 +801,7 @@ public class LinearHashFile<T extends IRecord<T>> {
         }
 
         pw.close();
+        return text.toString().getBytes(StandardCharsets.UTF_8);
     }
 
     private void loadMetadata() throws Exception {
@@ -523,6 +832,9 @@ public class LinearHashFile<T extends IRecord<T>> {
     }
 
     public void close() throws Exception {
+        if (log != null) {
+            log.close();
+        }
         saveMetadata();
         mainFile.close();
         overflowFile.close();
@@ -547,10 +859,12 @@ public class LinearHashFile<T extends IRecord<T>> {
 
             long blockSize = mainFile.getBlockSize();
 
-            for (int i = 0; i < currentGroups; i++) {
+            BlockIterator<T> primaryBlocks = mainFile.blockIterator(0, currentGroups * blockSize,
+                    HeapFile.DEFAULT_READ_AHEAD);
+            for (int i = 0; primaryBlocks.hasNext(); i++) {
 
-                long addr = (long) i * blockSize;
-                Block<T> block = mainFile.readBlock(addr);
+                Block<T> block = primaryBlocks.next();
+                long addr = primaryBlocks.getAddress();
 
                 sb.append("Index ").append(i)
                         .append(" @addr=").append(addr)
@@ -568,16 +882,17 @@ public class LinearHashFile<T extends IRecord<T>> {
             sb.append("----- OVERFLOW BLOCKS -----\n");
 
             long fileLen = overflowFile.getFileLength();
-            long oBlockSize = overflowFile.getBlockSize();
 
             if (fileLen == 0) {
                 sb.append("(no overflow blocks)\n");
                 return sb.toString();
             }
 
-            for (long addr = 0; addr + oBlockSize <= fileLen; addr += oBlockSize) {
+            BlockIterator<T> overflowBlocks = overflowFile.blockIterator();
+            while (overflowBlocks.hasNext()) {
 
-                Block<T> overflowBlock = overflowFile.readBlock(addr);
+                Block<T> overflowBlock = overflowBlocks.next();
+                long addr = overflowBlocks.getAddress();
 
                 sb.append("Overflow @addr=").append(addr)
                         .append("  valid=").append(overflowBlock.getValidCount())
@@ -598,6 +913,147 @@ public class LinearHashFile<T extends IRecord<T>> {
         return sb.toString();
     }
 
+    public void enableBlockRecycling(int poolSize) {
+        mainFile.enableBlockRecycling(poolSize);
+        overflowFile.enableBlockRecycling(poolSize);
+    }
+
+    // cache blokov, 0 = bez cache pre dany subor
+    public void enableCache(int mainBytes, int overflowBytes) throws Exception {
+        if (mainBytes > 0) {
+            mainFile.enableCache(mainBytes);
+        }
+        if (overflowBytes > 0) {
+            overflowFile.enableCache(overflowBytes);
+        }
+    }
+
+    // odlozeny zapis pre oba subory, split a insertIntoOverflow tak necakaju na disk
+    public void enableWriteBehind(int maxPendingBlocks) throws Exception {
+        mainFile.enableWriteBehind(maxPendingBlocks);
+        overflowFile.enableWriteBehind(maxPendingBlocks);
+    }
+
+    public void flush() throws Exception {
+        if (log != null) {
+            log.sync();
+        } else {
+            saveMetadata();
+        }
+        mainFile.flush();
+        overflowFile.flush();
+    }
+
+    // bloky oboch suborov, ich mapy volneho miesta aj M, u, S a pocty idu cez jeden log,
+    // takze split preruseny vypadkom sa pri dalsom otvoreni dokonci alebo akoby nezacal
+    public void enableWal(Durability durability) throws Exception {
+        if (durability == Durability.NONE || log != null) return;
+
+        log = new WriteAheadLog(walPath, durability);
+        changedBuckets = new TreeSet<>();
+        mainFile.attachLog(log);
+        overflowFile.attachLog(log);
+        metadataTarget = log.register(new ILogTarget() {
+            @Override
+            public void redoWrite(long offset, ByteBuffer data) throws IOException {
+                redoMetadata(offset, data);
+            }
+
+            @Override
+            public void redoLength(long length) {
+            }
+
+            // mimo obnovy sa metadata vynucuju uz pri zapise, pri obnove redoMetadata meni iba polia
+            // a subor sa musi zapisat skor, nez recover() vyprazdni log
+            @Override
+            public void force() throws IOException {
+                if (recovering) {
+                    saveMetadata();
+                }
+            }
+        });
+
+        overflowChains.clear();
+        recovering = true;
+        try {
+            if (log.recover() > 0) {
+                mainFile.reloadAfterRecovery();
+                overflowFile.reloadAfterRecovery();
+            }
+        } finally {
+            recovering = false;
+        }
+    }
+
+    private void bucketChanged(int index) {
+        if (changedBuckets != null) {
+            changedBuckets.add(index);
+        }
+    }
+
+    // v logu je iba hlavicka metadat (offset 0) a pocty zmenenych skupin (offset 1 + index),
+    // nie cely subor metadat
+    private void commitOperation() throws Exception {
+        if (log == null) return;
+
+        ByteBuffer header = ByteBuffer.allocate(28);
+        header.putInt(M).putInt(u).putInt(S).putInt(totalRecords).putDouble(maxDensity)
+                .putInt(bucketRecordCount.size());
+        log.write(metadataTarget, 0, header);
+
+        // skupiny zrusene pri merge() uz v metadatach nie su
+        for (int index : changedBuckets.headSet(bucketRecordCount.size())) {
+            ByteBuffer counts = ByteBuffer.allocate(8);
+            counts.putInt(bucketRecordCount.get(index)).putInt(bucketOverflowCount.get(index));
+            log.write(metadataTarget, 1 + index, counts);
+        }
+        changedBuckets.clear();
+
+        log.commit();
+    }
+
+    // zmeny sa zapisuju po hlavickach v poradi offsetov - mimo obnovy su polia uz aktualne
+    // a staci prepisat subor metadat, pri obnove sa polia nastavia z logu
+    private void redoMetadata(long offset, ByteBuffer data) throws IOException {
+        if (!recovering) {
+            if (offset == 0) {
+                saveMetadata();
+            }
+            return;
+        }
+
+        if (offset == 0) {
+            M = data.getInt(0);
+            u = data.getInt(4);
+            S = data.getInt(8);
+            totalRecords = data.getInt(12);
+            maxDensity = data.getDouble(16);
+
+            int buckets = data.getInt(24);
+            while (bucketRecordCount.size() < buckets) {
+                bucketRecordCount.add(0);
+                bucketOverflowCount.add(0);
+            }
+            while (bucketRecordCount.size() > buckets) {
+                bucketRecordCount.remove(bucketRecordCount.size() - 1);
+                bucketOverflowCount.remove(bucketOverflowCount.size() - 1);
+            }
+        } else {
+            int index = (int) (offset - 1);
+            bucketRecordCount.set(index, data.getInt(0));
+            bucketOverflowCount.set(index, data.getInt(4));
+        }
+    }
+
+    public WriteAheadLog getLog() {
+        return log;
+    }
+
+    public void enableLazyBlocks() {
+        mainFile.setLazyBlocks(true);
+        overflowFile.setLazyBlocks(true);
+    }
+
     public void enableDensitySplit(double maxDensity) {
         this.useDensity = true;
         this.maxDensity = maxDensity;
@@ -613,6 +1069,49 @@ public class LinearHashFile<T extends IRecord<T>> {
         this.maxOverflowBlocks = maxCount;
     }
 
+    // po delete sa posledna skupina zluci, ak hustota klesne pod minDensity
+    // minDensity ma byt dost pod prahom splitu, inak sa skupiny striedavo delia a zlucuju
+    public void enableDensityMerge(double minDensity) {
+        this.useDensityMerge = true;
+        this.minDensity = minDensity;
+    }
+
+    // zlucena skupina musi byt aspon o polovicu pod limitmi splitu podla velkosti a poctu
+    // preplnujucich blokov a hustota po zluceni nesmie prekrocit maxDensity - inak by dalsi
+    // insert skupinu hned znova rozdelil
+    private boolean shouldMerge() {
+        int currentGroups = S + M * (int) Math.pow(2, u);
+        if (!useDensityMerge || currentGroups <= M || getDensity() >= minDensity) {
+            return false;
+        }
+
+        int level = (S == 0) ? u - 1 : u;
+        int source = currentGroups - 1;
+        int target = source - M * (int) Math.pow(2, level);
+        int merged = bucketRecordCount.get(target) + bucketRecordCount.get(source);
+
+        if (useDensity) {
+            double density = (double) totalRecords / ((currentGroups - 1) * mainFile.getBlockFactor());
+            if (density > maxDensity) {
+                return false;
+            }
+        }
+
+        if (useBucketSize && merged * 2 > maxBucketSize) {
+            return false;
+        }
+
+        if (useOverflowCount) {
+            int overflowRecords = Math.max(0, merged - mainFile.getBlockFactor());
+            int overflowBlocks = (overflowRecords + overflowFile.getBlockFactor() - 1) / overflowFile.getBlockFactor();
+            if (overflowBlocks * 2 > maxOverflowBlocks) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     private boolean shouldSplit(int index) {
 
         if (useDensity) {
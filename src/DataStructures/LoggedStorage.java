@@ -0,0 +1,106 @@
+package DataStructures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// ulozisko, ktoreho zapisy idu najprv do WriteAheadLog - do inner sa dostanu az po force logu
+// read() vidi aj zmeny, ktore su zatial iba v logu
+//
+// musi byt navrchu - cache alebo odlozeny zapis sa zapinaju pod nim
+public class LoggedStorage implements IBlockStorage, ILogTarget {
+
+    private final WriteAheadLog log;
+    private final IBlockStorage inner;
+    private final int blockSize;
+    private final int target;
+    private long length;
+
+    public LoggedStorage(WriteAheadLog log, IBlockStorage inner, int blockSize) throws IOException {
+        this.log = log;
+        this.inner = inner;
+        this.blockSize = blockSize;
+        this.length = inner.length();
+        this.target = log.register(this);
+    }
+
+    // do logu sa zapisuje po blokoch, aby sa opakovane zapisy bloku v skupine zlucili
+    @Override
+    public void write(long addr, ByteBuffer buffer) throws IOException {
+        for (int pos = 0; pos < buffer.capacity(); pos += blockSize) {
+            log.write(target, addr + pos, buffer.slice(pos, Math.min(blockSize, buffer.capacity() - pos)));
+        }
+        length = Math.max(length, addr + buffer.capacity());
+    }
+
+    @Override
+    public void read(long addr, ByteBuffer buffer) throws IOException {
+        inner.read(addr, buffer);
+        log.overlay(target, addr, buffer);
+    }
+
+    @Override
+    public ByteBuffer view(long addr, int size) throws IOException {
+        if (addr + size > length || log.hasPending(target, addr, size)) {
+            return null;
+        }
+        return inner.view(addr, size);
+    }
+
+    @Override
+    public boolean supportsConcurrentReads() {
+        return inner.supportsConcurrentReads();
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void setLength(long newLength) throws IOException {
+        log.setLength(target, newLength);
+        length = newLength;
+    }
+
+    // zmeny v logu sa zapisu do inner, potom sa zapise inner
+    @Override
+    public void flush() throws IOException {
+        log.sync();
+        inner.flush();
+    }
+
+    // log zatvara jeho vlastnik, tu iba inner
+    @Override
+    public void close() throws IOException {
+        inner.close();
+    }
+
+    @Override
+    public void redoWrite(long offset, ByteBuffer data) throws IOException {
+        inner.write(offset, data);
+        length = Math.max(length, offset + data.capacity());
+    }
+
+    @Override
+    public void redoLength(long newLength) throws IOException {
+        inner.setLength(newLength);
+    }
+
+    @Override
+    public void force() throws IOException {
+        inner.flush();
+    }
+
+    // po obnove z logu plati dlzka suboru
+    void refreshLength() throws IOException {
+        length = inner.length();
+    }
+
+    public IBlockStorage getInner() {
+        return inner;
+    }
+
+    public WriteAheadLog getLog() {
+        return log;
+    }
+}
@@ -0,0 +1,190 @@
+package DataStructures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+// subor namapovany do pamate po segmentoch pevnej velkosti (nasobok velkosti bloku),
+// blok tak nikdy neprekroci hranicu segmentu a cita sa priamo z mapovania
+//
+// na disku je subor zarovnany na cele segmenty, skutocna dlzka sa drzi v poli length
+// a subor sa na nu skrati az pri close() - segment sa po namapovani uz nikdy neuvolni,
+// takze pohlady vratene cez view() ostavaju platne aj po zmenseni suboru
+// kym je subor otvoreny, poslednych TRAILER_SIZE bajtov posledneho segmentu je paticka
+// (magic + length) - zapisuje sa do mapovania spolu s blokmi, takze aj subor neukonceny
+// cez close() sa otvori so skutocnou dlzkou a doplnenie na segmenty sa nepovazuje za bloky
+public class MappedStorage implements IBlockStorage {
+
+    // priblizna velkost segmentu
+    public static final int SEGMENT_TARGET = 1 << 20;
+
+    private static final long TRAILER_MAGIC = 0x4D5354524C454E31L;
+    private static final int TRAILER_SIZE = 16;
+    private static final byte[] ZEROS = new byte[4096];
+
+    private final FileChannel channel;
+    private final int segmentSize;
+    private final ArrayList<MappedByteBuffer> segments;
+    private long length;
+
+    public MappedStorage(String path, int blockSize) throws IOException {
+        this.channel = FileChannel.open(Path.of(path),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        this.segmentSize = Math.max(1, SEGMENT_TARGET / blockSize) * blockSize;
+        this.segments = new ArrayList<>();
+        this.length = storedLength();
+
+        ensureMapped(length);
+        writeTrailer();
+    }
+
+    // dlzka z paticky, ak subor nebol zatvoreny, inak velkost suboru
+    private long storedLength() throws IOException {
+        long size = channel.size();
+        if (size < TRAILER_SIZE || size % segmentSize != 0) {
+            return size;
+        }
+
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        while (trailer.hasRemaining()) {
+            if (channel.read(trailer, size - TRAILER_SIZE + trailer.position()) < 0) break;
+        }
+        long stored = trailer.getLong(8);
+        if (trailer.getLong(0) != TRAILER_MAGIC || stored < 0 || stored > size - TRAILER_SIZE) {
+            return size;
+        }
+        return stored;
+    }
+
+    // namapuje segmenty az po adresu end a miesto pre paticku, FileChannel.map subor sam predlzi
+    // paticka v doterajsom poslednom segmente sa vynuluje, odteraz je to miesto pre bloky
+    private void ensureMapped(long end) throws IOException {
+        while ((long) segments.size() * segmentSize < end + TRAILER_SIZE) {
+            if (!segments.isEmpty()) {
+                clear(segments.get(segments.size() - 1), segmentSize - TRAILER_SIZE, segmentSize);
+            }
+            long position = (long) segments.size() * segmentSize;
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, position, segmentSize));
+        }
+    }
+
+    private void writeTrailer() {
+        MappedByteBuffer last = segments.get(segments.size() - 1);
+        last.putLong(segmentSize - TRAILER_SIZE, TRAILER_MAGIC);
+        last.putLong(segmentSize - TRAILER_SIZE + 8, length);
+    }
+
+    private static void clear(MappedByteBuffer segment, int from, int to) {
+        for (int pos = from; pos < to; pos += ZEROS.length) {
+            segment.put(pos, ZEROS, 0, Math.min(ZEROS.length, to - pos));
+        }
+    }
+
+    @Override
+    public ByteBuffer view(long addr, int size) {
+        if (addr + size > length) return null;
+
+        int index = (int) (addr / segmentSize);
+        int offset = (int) (addr % segmentSize);
+        if (offset + size > segmentSize) return null;
+
+        return segments.get(index).slice(offset, size);
+    }
+
+    @Override
+    public void read(long addr, ByteBuffer buffer) {
+        int total = 0;
+        int capacity = buffer.capacity();
+
+        while (total < capacity && addr + total < length) {
+            long pos = addr + total;
+            int index = (int) (pos / segmentSize);
+            int offset = (int) (pos % segmentSize);
+            int n = (int) Math.min(Math.min(capacity - total, segmentSize - offset), length - pos);
+
+            buffer.put(total, segments.get(index), offset, n);
+            total += n;
+        }
+
+        for (int i = total; i < capacity; i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    @Override
+    public void write(long addr, ByteBuffer buffer) throws IOException {
+        int capacity = buffer.capacity();
+        ensureMapped(addr + capacity);
+
+        int total = 0;
+        while (total < capacity) {
+            long pos = addr + total;
+            int index = (int) (pos / segmentSize);
+            int offset = (int) (pos % segmentSize);
+            int n = Math.min(capacity - total, segmentSize - offset);
+
+            segments.get(index).put(offset, buffer, total, n);
+            total += n;
+        }
+
+        if (addr + capacity > length) {
+            length = addr + capacity;
+            writeTrailer();
+        }
+    }
+
+    // citanie iba kopiruje z mapovania absolutnymi metodami
+    @Override
+    public boolean supportsConcurrentReads() {
+        return true;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    // pri zmenseni sa odrezany rozsah iba vynuluje, aby predlzenie suboru videlo nuly ako pri RafStorage,
+    // segmenty ostanu namapovane a novu dlzku nesie paticka
+    @Override
+    public void setLength(long newLength) throws IOException {
+        if (newLength >= length) {
+            ensureMapped(newLength);
+        } else {
+            for (long pos = newLength; pos < length; ) {
+                int index = (int) (pos / segmentSize);
+                int offset = (int) (pos % segmentSize);
+                int to = (int) Math.min(segmentSize, offset + (length - pos));
+                clear(segments.get(index), offset, to);
+                pos += to - offset;
+            }
+        }
+        length = newLength;
+        writeTrailer();
+    }
+
+    @Override
+    public void flush() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        segments.clear();
+        // kym GC neuvolni mapovania, niektore systemy (Windows) subor skratit nedovolia -
+        // subor potom ostane zarovnany a dlzku pri dalsom otvoreni urci paticka
+        try {
+            channel.truncate(length);
+        } catch (IOException e) {
+            // paticka je uz vynutena cez flush()
+        }
+        channel.close();
+    }
+}
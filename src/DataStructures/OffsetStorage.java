@@ -0,0 +1,61 @@
+package DataStructures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// posunie vsetky adresy o offset bajtov - zaciatok suboru (napr. stranka hlavicky)
+// je pre HeapFile neviditelny a bloky maju dalej adresy od 0
+public class OffsetStorage implements IBlockStorage {
+
+    private final IBlockStorage inner;
+    private final long offset;
+
+    public OffsetStorage(IBlockStorage inner, long offset) {
+        this.inner = inner;
+        this.offset = offset;
+    }
+
+    @Override
+    public void read(long addr, ByteBuffer buffer) throws IOException {
+        inner.read(addr + offset, buffer);
+    }
+
+    @Override
+    public void write(long addr, ByteBuffer buffer) throws IOException {
+        inner.write(addr + offset, buffer);
+    }
+
+    @Override
+    public ByteBuffer view(long addr, int size) throws IOException {
+        return inner.view(addr + offset, size);
+    }
+
+    @Override
+    public boolean supportsConcurrentReads() {
+        return inner.supportsConcurrentReads();
+    }
+
+    @Override
+    public long length() throws IOException {
+        return Math.max(0, inner.length() - offset);
+    }
+
+    @Override
+    public void setLength(long length) throws IOException {
+        inner.setLength(length + offset);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        inner.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inner.close();
+    }
+
+    public IBlockStorage getInner() {
+        return inner;
+    }
+}
@@ -0,0 +1,60 @@
+package DataStructures;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+// povodny pristup cez RandomAccessFile - seek + read/write, zdielany ukazovatel v subore,
+// preto iba pre jedno vlakno
+public class RafStorage implements IBlockStorage {
+
+    private final RandomAccessFile raf;
+
+    public RafStorage(String path) throws IOException {
+        this.raf = new RandomAccessFile(path, "rw");
+    }
+
+    @Override
+    public void read(long addr, ByteBuffer buffer) throws IOException {
+        byte[] arr = buffer.array();
+        int from = buffer.arrayOffset();
+        int total = 0;
+
+        raf.seek(addr);
+        while (total < buffer.capacity()) {
+            int n = raf.read(arr, from + total, buffer.capacity() - total);
+            if (n < 0) break;
+            total += n;
+        }
+
+        for (int i = total; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    @Override
+    public void write(long addr, ByteBuffer buffer) throws IOException {
+        raf.seek(addr);
+        raf.write(buffer.array(), buffer.arrayOffset(), buffer.capacity());
+    }
+
+    @Override
+    public long length() throws IOException {
+        return raf.length();
+    }
+
+    @Override
+    public void setLength(long length) throws IOException {
+        raf.setLength(length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        raf.getFD().sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+}
@@ -0,0 +1,46 @@
+package DataStructures;
+
+// identifikator zaznamu v HeapFile - adresa bloku a slot v nom
+// plati, kym sa zaznam nezmaze alebo nepresunie (compact), vyzaduje format so stabilnymi slotmi
+public final class RecordId implements Comparable<RecordId> {
+
+    private final long address;
+    private final int slot;
+
+    public RecordId(long address, int slot) {
+        this.address = address;
+        this.slot = slot;
+    }
+
+    public long getAddress() {
+        return address;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public int compareTo(RecordId other) {
+        int c = Long.compare(address, other.address);
+        return (c != 0) ? c : Integer.compare(slot, other.slot);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RecordId)) return false;
+        RecordId other = (RecordId) o;
+        return address == other.address && slot == other.slot;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(address) * 31 + slot;
+    }
+
+    @Override
+    public String toString() {
+        return address + ":" + slot;
+    }
+}
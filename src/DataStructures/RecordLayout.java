@@ -0,0 +1,453 @@
+package DataStructures;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// popis pevneho rozlozenia zaznamu - z neho sa odvodi velkost, offsety poli aj kodek
+// polia sa na objekt zaznamu napajaju podla mena, takze zaznam nemusi pisat vlastne writeTo/readFrom
+//
+// kodek je jeden MethodHandle pre zapis a jeden pre citanie, poskladany pri pridavani poli
+// z getterov/setterov poli a zapisu na pevny offset - ziadny prechod polami ani switch,
+// JVM horuci MethodHandle prisposobi a skompiluje ako rucne napisany kod s konstantnymi offsetmi
+public class RecordLayout<T> {
+
+    public enum FieldType {
+        INT, LONG, DOUBLE, BOOLEAN, STRING, INT_ARRAY, RESERVED
+    }
+
+    // (Object zaznam, ByteBuffer buffer, int offset zaznamu) -> void
+    private static final MethodType CODEC = MethodType.methodType(void.class, Object.class, ByteBuffer.class, int.class);
+    private static final MethodHandles.Lookup OWN = MethodHandles.lookup();
+
+    private final MethodHandles.Lookup lookup;
+    private final Class<T> recordClass;
+
+    private final ArrayList<Field> fields;
+    private final ArrayList<Field> stringFields;
+    private int size;
+
+    private MethodHandle writer;
+    private MethodHandle reader;
+
+    // lookup musi pochadzat z triedy zaznamu, aby bolo mozne citat jej privatne polia
+    public RecordLayout(MethodHandles.Lookup lookup, Class<T> recordClass) {
+        this.lookup = lookup;
+        this.recordClass = recordClass;
+        this.fields = new ArrayList<>();
+        this.stringFields = new ArrayList<>();
+        this.size = 0;
+        this.writer = MethodHandles.empty(CODEC);
+        this.reader = MethodHandles.empty(CODEC);
+    }
+
+    public RecordLayout<T> intField(String name) {
+        return add(name, FieldType.INT, 1, 4, int.class);
+    }
+
+    public RecordLayout<T> longField(String name) {
+        return add(name, FieldType.LONG, 1, 8, long.class);
+    }
+
+    public RecordLayout<T> doubleField(String name) {
+        return add(name, FieldType.DOUBLE, 1, 8, double.class);
+    }
+
+    public RecordLayout<T> booleanField(String name) {
+        return add(name, FieldType.BOOLEAN, 1, 1, boolean.class);
+    }
+
+    // maxLength bajtov doplnenych nulami + 1 bajt skutocnej dlzky
+    public RecordLayout<T> string(String name, int maxLength) {
+        return add(name, FieldType.STRING, maxLength, maxLength + 1, String.class);
+    }
+
+    public RecordLayout<T> intArray(String name, int count) {
+        return add(name, FieldType.INT_ARRAY, count, count * 4, int[].class);
+    }
+
+    // miesto, ktore si zaznam koduje sam, write/read ho preskakuju
+    public RecordLayout<T> reserved(String name, int width) {
+        return add(name, FieldType.RESERVED, width, width, null);
+    }
+
+    private RecordLayout<T> add(String name, FieldType type, int length, int width, Class<?> javaType) {
+        if (javaType != null) {
+            try {
+                MethodHandle getter = lookup.findGetter(recordClass, name, javaType);
+                // pole sa cita aj pri zapise kodov do uz existujuceho pola
+                MethodHandle setter = (type == FieldType.INT_ARRAY) ? null : lookup.findSetter(recordClass, name, javaType);
+
+                // novy zapis/citanie sa vykona az po doterajsich polach
+                writer = MethodHandles.foldArguments(fieldWriter(type, size, length, javaType, getter), writer);
+                reader = MethodHandles.foldArguments(fieldReader(type, size, length, javaType, getter, setter), reader);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Trieda " + recordClass.getSimpleName()
+                        + " nema pole " + name + " typu " + javaType.getSimpleName(), e);
+            }
+        }
+
+        Field field = new Field(name, type, size, width, length);
+        fields.add(field);
+        if (type == FieldType.STRING) {
+            stringFields.add(field);
+        }
+        size += width;
+        return this;
+    }
+
+    public Field field(String name) {
+        for (Field f : fields) {
+            if (f.name.equals(name)) {
+                return f;
+            }
+        }
+        throw new IllegalArgumentException("Neznáme pole: " + name);
+    }
+
+    public List<Field> getFields() {
+        return fields;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // velkost zhustenej podoby, ak su vsetky retazce prazdne
+    public int getMinCompactSize() {
+        int min = size;
+        for (Field f : fields) {
+            if (f.type == FieldType.STRING) {
+                min -= f.length;
+            }
+        }
+        return min;
+    }
+
+
+    public List<Field> getStringFields() {
+        return stringFields;
+    }
+
+    // skutocna dlzka j-teho retazca zaznamu v pevnom rozlozeni
+    public int stringLength(int stringIndex, ByteBuffer fixed, int offset) {
+        return stringFields.get(stringIndex).realLength(fixed, offset);
+    }
+
+    // dlzka spolocneho zaciatku j-teho retazca dvoch zaznamov
+    public int commonPrefix(int stringIndex, ByteBuffer a, int aOffset, ByteBuffer b, int bOffset) {
+        Field f = stringFields.get(stringIndex);
+        int limit = Math.min(f.realLength(a, aOffset), f.realLength(b, bOffset));
+
+        int from = f.offset;
+        int i = 0;
+        while (i < limit && a.get(aOffset + from + i) == b.get(bOffset + from + i)) {
+            i++;
+        }
+        return i;
+    }
+
+
+    // zhustena podoba zaznamu - retazec je 1 bajt dlzky + iba jeho skutocne bajty,
+    // ostatne polia ostavaju ako v pevnom rozlozeni
+    public int compactSize(ByteBuffer fixed, int offset) {
+        return compactSize(fixed, offset, null);
+    }
+
+    // prefixLengths - kolko bajtov z j-teho retazca sa vynecha (spolocny prefix bloku), null = ziadne
+    public int compactSize(ByteBuffer fixed, int offset, int[] prefixLengths) {
+        int compact = size;
+        for (int j = 0; j < stringFields.size(); j++) {
+            Field f = stringFields.get(j);
+            int skip = (prefixLengths == null) ? 0 : prefixLengths[j];
+            compact -= f.length - (f.realLength(fixed, offset) - skip);
+        }
+        return compact;
+    }
+
+    // vrati pocet zapisanych bajtov
+    public int compact(ByteBuffer fixed, int fixedOffset, ByteBuffer out, int outOffset) {
+        return compact(fixed, fixedOffset, out, outOffset, null);
+    }
+
+    public int compact(ByteBuffer fixed, int fixedOffset, ByteBuffer out, int outOffset, int[] prefixLengths) {
+        int pos = outOffset;
+        int stringIndex = 0;
+        for (Field f : fields) {
+            int from = fixedOffset + f.offset;
+
+            if (f.type == FieldType.STRING) {
+                int skip = (prefixLengths == null) ? 0 : prefixLengths[stringIndex];
+                int suffix = f.realLength(fixed, fixedOffset) - skip;
+                out.put(pos, (byte) suffix);
+                out.put(pos + 1, fixed, from + skip, suffix);
+                pos += 1 + suffix;
+                stringIndex++;
+            } else {
+                out.put(pos, fixed, from, f.width);
+                pos += f.width;
+            }
+        }
+        return pos - outOffset;
+    }
+
+    // opak compact(), vrati pocet precitanych bajtov
+    public int expand(ByteBuffer in, int inOffset, ByteBuffer fixed, int fixedOffset) {
+        return expand(in, inOffset, fixed, fixedOffset, null, null);
+    }
+
+    // prefixOffsets su absolutne pozicie prefixov v buffri in
+    public int expand(ByteBuffer in, int inOffset, ByteBuffer fixed, int fixedOffset,
+                      int[] prefixOffsets, int[] prefixLengths) {
+        int pos = inOffset;
+        int stringIndex = 0;
+        for (Field f : fields) {
+            int to = fixedOffset + f.offset;
+
+            if (f.type == FieldType.STRING) {
+                int prefix = 0;
+                if (prefixLengths != null) {
+                    prefix = prefixLengths[stringIndex];
+                    fixed.put(to, in, prefixOffsets[stringIndex], prefix);
+                }
+
+                int real = Math.min(prefix + (in.get(pos) & 0xFF), f.length);
+                fixed.put(to + prefix, in, pos + 1, real - prefix);
+                for (int i = real; i < f.length; i++) {
+                    fixed.put(to + i, (byte) 0);
+                }
+                fixed.put(to + f.length, (byte) real);
+                pos += 1 + (in.get(pos) & 0xFF);
+                stringIndex++;
+            } else {
+                fixed.put(to, in, pos, f.width);
+                pos += f.width;
+            }
+        }
+        return pos - inOffset;
+    }
+
+
+    public void write(T record, ByteBuffer buffer, int offset) {
+        try {
+            writer.invokeExact((Object) record, buffer, offset);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void read(T record, ByteBuffer buffer, int offset) {
+        try {
+            reader.invokeExact((Object) record, buffer, offset);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // (zaznam, buffer, offset) -> zapis hodnoty z gettera na offset + pos
+    private static MethodHandle fieldWriter(FieldType type, int pos, int length, Class<?> javaType,
+                                            MethodHandle getter) throws ReflectiveOperationException {
+        MethodHandle put = switch (type) {
+            case STRING, INT_ARRAY -> MethodHandles.insertArguments(
+                    codecHelper("write", type, int.class, int.class, javaType), 2, pos, length);
+            default -> MethodHandles.insertArguments(codecHelper("write", type, int.class, javaType), 2, pos);
+        };
+        // (buffer, offset, hodnota) -> (buffer, offset, zaznam) -> (zaznam, buffer, offset)
+        put = MethodHandles.filterArguments(put, 2, getter.asType(MethodType.methodType(javaType, Object.class)));
+        return MethodHandles.permuteArguments(put, CODEC, 1, 2, 0);
+    }
+
+    // (zaznam, buffer, offset) -> setter(zaznam, hodnota z offset + pos), pole intov sa plni na mieste
+    private static MethodHandle fieldReader(FieldType type, int pos, int length, Class<?> javaType,
+                                            MethodHandle getter, MethodHandle setter) throws ReflectiveOperationException {
+        if (type == FieldType.INT_ARRAY) {
+            MethodHandle fill = MethodHandles.insertArguments(
+                    codecHelper("read", type, int.class, int.class, javaType), 2, pos, length);
+            fill = MethodHandles.filterArguments(fill, 2, getter.asType(MethodType.methodType(javaType, Object.class)));
+            return MethodHandles.permuteArguments(fill, CODEC, 1, 2, 0);
+        }
+
+        MethodHandle get = (type == FieldType.STRING)
+                ? MethodHandles.insertArguments(codecHelper("read", type, int.class, int.class), 2, pos, length)
+                : MethodHandles.insertArguments(codecHelper("read", type, int.class), 2, pos);
+        return MethodHandles.collectArguments(
+                setter.asType(MethodType.methodType(void.class, Object.class, javaType)), 1, get);
+    }
+
+    // pomocna metoda write<Typ>/read<Typ>(buffer, offset, pos, ...) tejto triedy
+    private static MethodHandle codecHelper(String prefix, FieldType type, Class<?>... rest)
+            throws ReflectiveOperationException {
+        String name = prefix + switch (type) {
+            case INT -> "Int";
+            case LONG -> "Long";
+            case DOUBLE -> "Double";
+            case BOOLEAN -> "Boolean";
+            case STRING -> "String";
+            case INT_ARRAY -> "Ints";
+            case RESERVED -> throw new IllegalArgumentException("Rezervovane pole nema kodek");
+        };
+
+        Class<?>[] parameters = new Class<?>[2 + rest.length];
+        parameters[0] = ByteBuffer.class;
+        parameters[1] = int.class;
+        System.arraycopy(rest, 0, parameters, 2, rest.length);
+
+        boolean fills = prefix.equals("read") && type == FieldType.INT_ARRAY;
+        Class<?> result = (prefix.equals("write") || fills) ? void.class : javaTypeOf(type);
+        return OWN.findStatic(RecordLayout.class, name, MethodType.methodType(result, parameters));
+    }
+
+    private static Class<?> javaTypeOf(FieldType type) {
+        return switch (type) {
+            case INT -> int.class;
+            case LONG -> long.class;
+            case DOUBLE -> double.class;
+            case BOOLEAN -> boolean.class;
+            case STRING -> String.class;
+            default -> int[].class;
+        };
+    }
+
+    private static void writeInt(ByteBuffer buffer, int offset, int pos, int value) {
+        buffer.putInt(offset + pos, value);
+    }
+
+    private static void writeLong(ByteBuffer buffer, int offset, int pos, long value) {
+        buffer.putLong(offset + pos, value);
+    }
+
+    private static void writeDouble(ByteBuffer buffer, int offset, int pos, double value) {
+        buffer.putDouble(offset + pos, value);
+    }
+
+    private static void writeBoolean(ByteBuffer buffer, int offset, int pos, boolean value) {
+        buffer.put(offset + pos, (byte) (value ? 1 : 0));
+    }
+
+    private static void writeString(ByteBuffer buffer, int offset, int pos, int maxLength, String value) {
+        putString(buffer, offset + pos, value, maxLength);
+    }
+
+    private static void writeInts(ByteBuffer buffer, int offset, int pos, int count, int[] values) {
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(offset + pos + i * 4, values[i]);
+        }
+    }
+
+    private static int readInt(ByteBuffer buffer, int offset, int pos) {
+        return buffer.getInt(offset + pos);
+    }
+
+    private static long readLong(ByteBuffer buffer, int offset, int pos) {
+        return buffer.getLong(offset + pos);
+    }
+
+    private static double readDouble(ByteBuffer buffer, int offset, int pos) {
+        return buffer.getDouble(offset + pos);
+    }
+
+    private static boolean readBoolean(ByteBuffer buffer, int offset, int pos) {
+        return buffer.get(offset + pos) != 0;
+    }
+
+    private static String readString(ByteBuffer buffer, int offset, int pos, int maxLength) {
+        return getString(buffer, offset + pos, maxLength);
+    }
+
+    private static void readInts(ByteBuffer buffer, int offset, int pos, int count, int[] values) {
+        for (int i = 0; i < count; i++) {
+            values[i] = buffer.getInt(offset + pos + i * 4);
+        }
+    }
+
+
+    public static class Field {
+
+        private final String name;
+        private final FieldType type;
+        private final int offset;
+        private final int width;
+        private final int length;
+
+        private Field(String name, FieldType type, int offset, int width, int length) {
+            this.name = name;
+            this.type = type;
+            this.offset = offset;
+            this.width = width;
+            this.length = length;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public FieldType getType() {
+            return type;
+        }
+
+        // offset od zaciatku zaznamu
+        public int getOffset() {
+            return offset;
+        }
+
+        // pocet bajtov, ktore pole zabera
+        public int getWidth() {
+            return width;
+        }
+
+        // max. dlzka retazca alebo pocet prvkov pola
+        public int getLength() {
+            return length;
+        }
+
+        private int realLength(ByteBuffer buffer, int recordOffset) {
+            return Math.min(buffer.get(recordOffset + offset + length) & 0xFF, length);
+        }
+
+        public void putInt(ByteBuffer buffer, int recordOffset, int value) {
+            buffer.putInt(recordOffset + offset, value);
+        }
+
+        public int getInt(ByteBuffer buffer, int recordOffset) {
+            return buffer.getInt(recordOffset + offset);
+        }
+
+        public void putString(ByteBuffer buffer, int recordOffset, String value) {
+            RecordLayout.putString(buffer, recordOffset + offset, value, length);
+        }
+
+        public String getString(ByteBuffer buffer, int recordOffset) {
+            return RecordLayout.getString(buffer, recordOffset + offset, length);
+        }
+    }
+
+    // retazec na pozicii pos: maxLength bajtov doplnenych nulami + 1 bajt skutocnej dlzky
+    public static void putString(ByteBuffer buffer, int pos, String value, int maxLength) {
+        byte[] bytes = value.getBytes();
+        int real = Math.min(bytes.length, maxLength);
+
+        buffer.put(pos, bytes, 0, real);
+        for (int i = real; i < maxLength; i++) {
+            buffer.put(pos + i, (byte) 0);
+        }
+        buffer.put(pos + maxLength, (byte) real);
+    }
+
+    public static String getString(ByteBuffer buffer, int pos, int maxLength) {
+        int real = Math.min(buffer.get(pos + maxLength) & 0xFF, maxLength);
+
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + pos, real);
+        }
+        byte[] tmp = new byte[real];
+        buffer.get(pos, tmp);
+        return new String(tmp);
+    }
+}
@@ -0,0 +1,25 @@
+package DataStructures;
+
+import java.util.ArrayList;
+
+// ci trieda zaznamu prekryva getBytes/fromBytes - reflexia iba raz pre triedu, nie pri kazdom zapise
+final class RecordOverrides {
+    static final ClassValue<Boolean> GET_BYTES = overrides("getBytes");
+    static final ClassValue<Boolean> FROM_BYTES = overrides("fromBytes", ArrayList.class);
+
+    private RecordOverrides() {
+    }
+
+    private static ClassValue<Boolean> overrides(String method, Class<?>... parameters) {
+        return new ClassValue<>() {
+            @Override
+            protected Boolean computeValue(Class<?> type) {
+                try {
+                    return type.getMethod(method, parameters).getDeclaringClass() != IRecord.class;
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+}
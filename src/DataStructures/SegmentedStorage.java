@@ -0,0 +1,271 @@
+package DataStructures;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+// HeapFile rozdeleny do viacerych suborov (segmentov), napr. na roznych diskoch
+// adresa bloku ostava jedno cislo od 0, segment a posun v nom sa z nej vypocitaju:
+//
+// ROUND_ROBIN - blok n je v segmente n % k na posune (n / k) * blockSize, po sebe iduce bloky
+//               su v roznych segmentoch a subor rastie vo vsetkych rovnako
+// FILL        - segment ma kapacitu segmentBytes, blok je v segmente addr / segmentBytes,
+//               dalsi segment sa zacne plnit az po zaplneni predchadzajuceho (posledny nema limit)
+//
+// citanie alebo zapis viac blokov sa rozdeli na jeden beh na segment a segmenty sa obsluzia paralelne
+public class SegmentedStorage implements IBlockStorage {
+
+    public enum Allocation {
+        ROUND_ROBIN, FILL
+    }
+
+    // suvisly usek jedneho segmentu a pozicie jeho blokov v bufferi
+    private static class Run {
+        private final int segment;
+        private final long offset;
+        private final ArrayList<Integer> positions = new ArrayList<>();
+
+        Run(int segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    private final IBlockStorage[] segments;
+    private final int blockSize;
+    private final Allocation allocation;
+    private final long segmentBytes;
+    private long length;
+
+    public SegmentedStorage(IBlockStorage[] segments, int blockSize, Allocation allocation, long segmentBytes)
+            throws IOException {
+        if (segments.length == 0) {
+            throw new IllegalArgumentException("Treba aspon jeden segment");
+        }
+        if (allocation == Allocation.FILL && (segmentBytes <= 0 || segmentBytes % blockSize != 0)) {
+            throw new IllegalArgumentException("Kapacita segmentu musi byt nasobok velkosti bloku " + blockSize);
+        }
+
+        this.segments = segments;
+        this.blockSize = blockSize;
+        this.allocation = allocation;
+        this.segmentBytes = segmentBytes;
+
+        for (int s = 0; s < segments.length; s++) {
+            long blocks = segments[s].length() / blockSize;
+            if (blocks > 0) {
+                length = Math.max(length, toAddress(s, (blocks - 1) * blockSize) + blockSize);
+            }
+        }
+    }
+
+    public static SegmentedStorage roundRobin(String[] paths, int blockSize) throws IOException {
+        return new SegmentedStorage(open(paths), blockSize, Allocation.ROUND_ROBIN, 0);
+    }
+
+    public static SegmentedStorage fill(String[] paths, int blockSize, long segmentBytes) throws IOException {
+        return new SegmentedStorage(open(paths), blockSize, Allocation.FILL, segmentBytes);
+    }
+
+    private static IBlockStorage[] open(String[] paths) throws IOException {
+        IBlockStorage[] storages = new IBlockStorage[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            storages[i] = new ChannelStorage(paths[i]);
+        }
+        return storages;
+    }
+
+    public int segmentOf(long addr) {
+        if (allocation == Allocation.ROUND_ROBIN) {
+            return (int) ((addr / blockSize) % segments.length);
+        }
+        return (int) Math.min(addr / segmentBytes, segments.length - 1);
+    }
+
+    public long offsetOf(long addr) {
+        if (allocation == Allocation.ROUND_ROBIN) {
+            return (addr / blockSize / segments.length) * blockSize;
+        }
+        return addr - (long) segmentOf(addr) * segmentBytes;
+    }
+
+    private long toAddress(int segment, long offset) {
+        if (allocation == Allocation.ROUND_ROBIN) {
+            return ((offset / blockSize) * segments.length + segment) * blockSize;
+        }
+        return (long) segment * segmentBytes + offset;
+    }
+
+    // bloky jedneho segmentu v suvislom rozsahu adries maju vzdy po sebe iduce posuny
+    private ArrayList<Run> split(long addr, int capacity) {
+        if (addr % blockSize != 0 || capacity % blockSize != 0) {
+            throw new IllegalArgumentException("Segmenty sa citaju a zapisuju iba po celych blokoch velkosti " + blockSize);
+        }
+
+        Run[] bySegment = new Run[segments.length];
+        ArrayList<Run> runs = new ArrayList<>();
+        for (int pos = 0; pos < capacity; pos += blockSize) {
+            int segment = segmentOf(addr + pos);
+            if (bySegment[segment] == null) {
+                bySegment[segment] = new Run(segment, offsetOf(addr + pos));
+                runs.add(bySegment[segment]);
+            }
+            bySegment[segment].positions.add(pos);
+        }
+        return runs;
+    }
+
+    private interface RunIo {
+        void apply(Run run) throws IOException;
+    }
+
+    private void forEachRun(ArrayList<Run> runs, RunIo io) throws IOException {
+        if (runs.size() == 1) {
+            io.apply(runs.get(0));
+            return;
+        }
+
+        try {
+            IntStream.range(0, runs.size()).parallel().forEach(i -> {
+                try {
+                    io.apply(runs.get(i));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void read(long addr, ByteBuffer buffer) throws IOException {
+        ArrayList<Run> runs = split(addr, buffer.capacity());
+
+        if (runs.size() == 1) {
+            Run run = runs.get(0);
+            segments[run.segment].read(run.offset, buffer);
+            return;
+        }
+
+        forEachRun(runs, run -> {
+            ByteBuffer part = ByteBuffer.allocate(run.positions.size() * blockSize);
+            segments[run.segment].read(run.offset, part);
+            for (int i = 0; i < run.positions.size(); i++) {
+                buffer.put(run.positions.get(i), part, i * blockSize, blockSize);
+            }
+        });
+    }
+
+    @Override
+    public void write(long addr, ByteBuffer buffer) throws IOException {
+        ArrayList<Run> runs = split(addr, buffer.capacity());
+
+        if (runs.size() == 1) {
+            Run run = runs.get(0);
+            segments[run.segment].write(run.offset, buffer);
+        } else {
+            forEachRun(runs, run -> {
+                ByteBuffer part = ByteBuffer.allocate(run.positions.size() * blockSize);
+                for (int i = 0; i < run.positions.size(); i++) {
+                    part.put(i * blockSize, buffer, run.positions.get(i), blockSize);
+                }
+                segments[run.segment].write(run.offset, part);
+            });
+        }
+
+        length = Math.max(length, addr + buffer.capacity());
+    }
+
+    // pohlad iba ak cely rozsah lezi suvisle v jednom segmente
+    @Override
+    public ByteBuffer view(long addr, int size) throws IOException {
+        if (addr + size > length) return null;
+
+        int segment = segmentOf(addr);
+        long last = addr + size - 1;
+        if (segmentOf(last) != segment || offsetOf(last) - offsetOf(addr) != size - 1) {
+            return null;
+        }
+        return segments[segment].view(offsetOf(addr), size);
+    }
+
+    @Override
+    public boolean supportsConcurrentReads() {
+        for (IBlockStorage segment : segments) {
+            if (!segment.supportsConcurrentReads()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    // kazdy segment sa skrati alebo predlzi na bloky, ktore mu z novej dlzky patria
+    @Override
+    public void setLength(long newLength) throws IOException {
+        long blocks = (newLength + blockSize - 1) / blockSize;
+
+        for (int s = 0; s < segments.length; s++) {
+            long segmentLength;
+            if (allocation == Allocation.ROUND_ROBIN) {
+                segmentLength = (blocks > s) ? ((blocks - s + segments.length - 1) / segments.length) * blockSize : 0;
+            } else if (s == segments.length - 1) {
+                segmentLength = Math.max(0, blocks * blockSize - (long) s * segmentBytes);
+            } else {
+                segmentLength = Math.max(0, Math.min(segmentBytes, blocks * blockSize - (long) s * segmentBytes));
+            }
+            if (segments[s].length() != segmentLength) {
+                segments[s].setLength(segmentLength);
+            }
+        }
+        length = blocks * blockSize;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        forEachSegment(IBlockStorage::flush);
+    }
+
+    @Override
+    public void close() throws IOException {
+        forEachSegment(IBlockStorage::close);
+    }
+
+    private interface SegmentIo {
+        void apply(IBlockStorage segment) throws IOException;
+    }
+
+    // vsetky segmenty aj pri chybe jedneho z nich, prva chyba sa vyhodi
+    private void forEachSegment(SegmentIo io) throws IOException {
+        IOException failure = null;
+        for (IBlockStorage segment : segments) {
+            try {
+                io.apply(segment);
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    public IBlockStorage getSegment(int index) {
+        return segments[index];
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public Allocation getAllocation() {
+        return allocation;
+    }
+}
@@ -0,0 +1,351 @@
+package DataStructures;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+// redo log pre jeden alebo viac suborov (ILogTarget)
+//
+// zmeny operacie (obrazy blokov, bajty mapy volneho miesta, metadata) sa drzia v pamati
+// a pri commit() sa pridaju na koniec logu s oznacenim konca operacie
+// do cielovych suborov sa zapisu az ked je log vynuteny na disk (sync), takze v subore
+// nikdy nie je zmena, ktora by nebola v logu - pri GROUP jeden force pre celu skupinu operacii
+//
+// pri GROUP vlakno na pozadi vynuti log, ak najstarsia nevynutena operacia caka aspon
+// GROUP_COMMIT_MILLIS - aj necinna skupina je tak na disku najneskor po ~2x GROUP_COMMIT_MILLIS
+// vlakno iba vynuti log, zmeny do cielov zapise az dalsi sync() vo vlakne volajuceho
+//
+// zaznam: typ (1), ciel (4), offset (8), dlzka (4), data, crc32 (4)
+// pri otvoreni recover() zopakuje vsetky operacie ukoncene COMMIT, neuplny koniec sa zahodi
+public class WriteAheadLog {
+
+    // pocet operacii v skupine a najdlhsie cakanie na force pri GROUP
+    public static final int GROUP_COMMIT_OPS = 64;
+    public static final long GROUP_COMMIT_MILLIS = 50;
+    // po prekroceni sa ciele vynutia na disk a log sa vyprazdni
+    public static final long CHECKPOINT_BYTES = 8L << 20;
+
+    private static final byte WRITE = 1;
+    private static final byte LENGTH = 2;
+    private static final byte COMMIT = 3;
+    private static final int HEADER = 17;
+
+    // zmeny jedneho ciela, ktore este nie su zapisane v subore
+    private static class Pending {
+        private final TreeMap<Long, byte[]> writes = new TreeMap<>();
+        private int maxChunk;
+        // najmensia a posledna dlzka nastavena od posledneho zapisu do suboru, -1 ak ziadna
+        private long truncateTo = -1;
+        private long length = -1;
+
+        boolean isEmpty() {
+            return writes.isEmpty() && length == -1;
+        }
+    }
+
+    private final String path;
+    private final FileChannel channel;
+    private final Durability durability;
+    private final int groupSize;
+
+    private final ArrayList<ILogTarget> targets;
+    private final ArrayList<Pending> pending;
+
+    private final ByteArrayOutputStream operation;
+    private final CRC32 crc;
+    private long logEnd;
+    private long sequence;
+    private int groupOps;
+    private long groupStart;
+
+    private long commits;
+    private long syncs;
+
+    // koniec logu uz vynuteny na disk, chyba vynutenia z vlakna na pozadi
+    private long forcedEnd;
+    private IOException failure;
+    private boolean closed;
+
+    public WriteAheadLog(String path, Durability durability) throws IOException {
+        this(path, durability, GROUP_COMMIT_OPS);
+    }
+
+    public WriteAheadLog(String path, Durability durability, int groupSize) throws IOException {
+        this.path = path;
+        this.durability = durability;
+        this.groupSize = Math.max(1, groupSize);
+        this.channel = FileChannel.open(Path.of(path),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+        this.targets = new ArrayList<>();
+        this.pending = new ArrayList<>();
+        this.operation = new ByteArrayOutputStream();
+        this.crc = new CRC32();
+        this.logEnd = channel.size();
+        this.forcedEnd = logEnd;
+
+        if (durability == Durability.GROUP) {
+            Thread flusher = new Thread(this::flushLoop, "wal-group-flush");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    private synchronized void flushLoop() {
+        while (!closed) {
+            try {
+                wait(GROUP_COMMIT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (closed || failure != null || logEnd <= forcedEnd
+                    || System.currentTimeMillis() - groupStart < GROUP_COMMIT_MILLIS) {
+                continue;
+            }
+            try {
+                channel.force(false);
+                forcedEnd = logEnd;
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+
+    // ciele sa musia registrovat pri kazdom otvoreni v rovnakom poradi, cislo ciela je v logu
+    public synchronized int register(ILogTarget target) {
+        targets.add(target);
+        pending.add(new Pending());
+        return targets.size() - 1;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public synchronized void write(int target, long offset, ByteBuffer data) {
+        byte[] copy = new byte[data.capacity()];
+        data.get(0, copy);
+
+        append(WRITE, target, offset, copy);
+
+        Pending p = pending.get(target);
+        p.writes.put(offset, copy);
+        p.maxChunk = Math.max(p.maxChunk, copy.length);
+    }
+
+    // zapisy za novou dlzkou sa zahodia, subor sa skrati az pri sync()
+    public synchronized void setLength(int target, long length) {
+        append(LENGTH, target, length, new byte[0]);
+
+        Pending p = pending.get(target);
+        p.writes.tailMap(length - p.maxChunk + 1).entrySet().removeIf(e -> e.getKey() + e.getValue().length > length);
+        p.truncateTo = (p.truncateTo == -1) ? length : Math.min(p.truncateTo, length);
+        p.length = length;
+    }
+
+    private void append(byte type, int target, long offset, byte[] data) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.put(type).putInt(target).putLong(offset).putInt(data.length);
+
+        crc.reset();
+        crc.update(header.array());
+        crc.update(data);
+
+        operation.writeBytes(header.array());
+        operation.writeBytes(data);
+        operation.writeBytes(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+    }
+
+    // buffer precitany zo suboru ciela doplni o este nezapisane zmeny
+    public synchronized void overlay(int target, long addr, ByteBuffer buffer) {
+        Pending p = pending.get(target);
+        if (p.isEmpty()) return;
+
+        long end = addr + buffer.capacity();
+        if (p.truncateTo != -1 && p.truncateTo < end) {
+            for (long pos = Math.max(addr, p.truncateTo); pos < end; pos++) {
+                buffer.put((int) (pos - addr), (byte) 0);
+            }
+        }
+
+        for (Map.Entry<Long, byte[]> e : p.writes.subMap(addr - p.maxChunk + 1, end).entrySet()) {
+            byte[] data = e.getValue();
+            long from = Math.max(addr, e.getKey());
+            long to = Math.min(end, e.getKey() + data.length);
+            if (from < to) {
+                buffer.put((int) (from - addr), data, (int) (from - e.getKey()), (int) (to - from));
+            }
+        }
+    }
+
+    // ci su v rozsahu zmeny, ktore este nie su v subore ciela
+    public synchronized boolean hasPending(int target, long addr, int size) {
+        Pending p = pending.get(target);
+        if (p.isEmpty()) return false;
+        if (p.truncateTo != -1 && p.truncateTo < addr + size) return true;
+        return !p.writes.subMap(addr - p.maxChunk + 1, addr + size).isEmpty();
+    }
+
+    // koniec operacie - zmeny sa pridaju do logu, podla durability sa vynutia a zapisu do cielov
+    public synchronized void commit() throws IOException {
+        if (failure != null) {
+            throw new IOException("Vynutenie logu zlyhalo", failure);
+        }
+        append(COMMIT, -1, sequence++, new byte[0]);
+
+        ByteBuffer bytes = ByteBuffer.wrap(operation.toByteArray());
+        while (bytes.hasRemaining()) {
+            logEnd += channel.write(bytes, logEnd);
+        }
+        operation.reset();
+        commits++;
+
+        if (groupOps++ == 0) {
+            groupStart = System.currentTimeMillis();
+        }
+
+        if (durability == Durability.EVERY_OP || groupOps >= groupSize
+                || System.currentTimeMillis() - groupStart >= GROUP_COMMIT_MILLIS) {
+            sync();
+        }
+    }
+
+    // force logu a zapis vsetkych cakajucich zmien do cielov
+    public synchronized void sync() throws IOException {
+        if (operation.size() == 0 && groupOps == 0) return;
+
+        channel.force(false);
+        forcedEnd = logEnd;
+        syncs++;
+        groupOps = 0;
+
+        for (int t = 0; t < targets.size(); t++) {
+            apply(targets.get(t), pending.get(t));
+        }
+
+        if (logEnd >= CHECKPOINT_BYTES) {
+            checkpoint();
+        }
+    }
+
+    // najprv najkratsia dlzka, potom zapisy, ktore ju prezili, nakoniec posledna nastavena dlzka
+    private void apply(ILogTarget target, Pending p) throws IOException {
+        if (p.isEmpty()) return;
+
+        if (p.truncateTo != -1) {
+            target.redoLength(p.truncateTo);
+        }
+        long end = p.truncateTo;
+        for (Map.Entry<Long, byte[]> e : p.writes.entrySet()) {
+            target.redoWrite(e.getKey(), ByteBuffer.wrap(e.getValue()));
+            end = Math.max(end, e.getKey() + e.getValue().length);
+        }
+        if (p.length > end) {
+            target.redoLength(p.length);
+        }
+
+        p.writes.clear();
+        p.maxChunk = 0;
+        p.truncateTo = -1;
+        p.length = -1;
+    }
+
+    // vsetko z logu je uz v cieloch - ciele sa vynutia na disk a log sa moze vyprazdnit
+    private void checkpoint() throws IOException {
+        for (ILogTarget target : targets) {
+            target.force();
+        }
+        channel.truncate(0);
+        logEnd = 0;
+        forcedEnd = 0;
+    }
+
+    // zopakuje ukoncene operacie z logu do cielov, vrati ich pocet
+    // volat po registracii vsetkych cielov a pred prvou zmenou
+    public synchronized int recover() throws IOException {
+        if (logEnd == 0) return 0;
+
+        int replayed = 0;
+        ArrayList<byte[]> records = new ArrayList<>();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(0))));
+        try {
+            while (true) {
+                byte[] header = new byte[HEADER];
+                in.readFully(header);
+                ByteBuffer h = ByteBuffer.wrap(header);
+                int length = h.getInt(13);
+                if (length < 0 || length > logEnd) break;
+
+                byte[] record = new byte[HEADER + length];
+                System.arraycopy(header, 0, record, 0, HEADER);
+                in.readFully(record, HEADER, length);
+
+                crc.reset();
+                crc.update(record);
+                if (in.readInt() != (int) crc.getValue()) break;
+
+                if (record[0] == COMMIT) {
+                    for (byte[] r : records) {
+                        redo(r);
+                    }
+                    records.clear();
+                    replayed++;
+                } else {
+                    records.add(record);
+                }
+            }
+        } catch (EOFException e) {
+            // neuplny posledny zaznam - operacia nebola dokoncena
+        }
+
+        checkpoint();
+        return replayed;
+    }
+
+    private void redo(byte[] record) throws IOException {
+        ByteBuffer r = ByteBuffer.wrap(record);
+        int target = r.getInt(1);
+        long offset = r.getLong(5);
+        if (target < 0 || target >= targets.size()) {
+            throw new IOException("Log obsahuje neznamy cielovy subor " + target);
+        }
+
+        if (record[0] == WRITE) {
+            targets.get(target).redoWrite(offset, ByteBuffer.wrap(record, HEADER, record.length - HEADER).slice());
+        } else if (record[0] == LENGTH) {
+            targets.get(target).redoLength(offset);
+        }
+    }
+
+    // po zatvoreni su vsetky zmeny v cieloch na disku a log sa zmaze
+    public synchronized void close() throws IOException {
+        closed = true;
+        notifyAll();
+        sync();
+        checkpoint();
+        channel.close();
+        Files.deleteIfExists(Path.of(path));
+    }
+
+    public synchronized long getCommits() {
+        return commits;
+    }
+
+    public synchronized long getSyncs() {
+        return syncs;
+    }
+}
@@ -0,0 +1,301 @@
+package DataStructures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// odlozeny zapis - write() si blok iba zapamata a na disk ho zapise vlakno na pozadi
+// opakovane zapisy tej istej adresy sa zlucia do posledneho, zapisuje sa podla adries
+// a susedne bloky jednym volanim
+//
+// read() a view() vidia aj este nezapisane bloky, flush() pocka na zapis vsetkeho
+// po chybe zapisu ostanu nezapisane bloky v pending (citanie ich stale vidi),
+// vlakno uz dalej nezapisuje a write() aj flush() hlasia chybu
+public class WriteBehindStorage implements IBlockStorage {
+
+    // najviac blokov v jednom zapise na disk
+    private static final int MAX_RUN = 64;
+
+    private final IBlockStorage inner;
+    private final int blockSize;
+    private final int maxPending;
+
+    // lock chrani mapy, ioLock pristup k inner - poradie zamykania je vzdy ioLock -> lock
+    private final Object lock = new Object();
+    private final Object ioLock = new Object();
+
+    private TreeMap<Long, ByteBuffer> pending;
+    private TreeMap<Long, ByteBuffer> inFlight;
+    private long length;
+    private boolean closing;
+    private IOException failure;
+
+    private final Thread writer;
+    private long submittedBlocks;
+    private long writtenBlocks;
+
+    // maxPending - pri tolkych cakajucich blokoch write() pocka na zapisovace
+    public WriteBehindStorage(IBlockStorage inner, int blockSize, int maxPending) throws IOException {
+        this.inner = inner;
+        this.blockSize = blockSize;
+        this.maxPending = Math.max(1, maxPending);
+
+        this.pending = new TreeMap<>();
+        this.inFlight = new TreeMap<>();
+        this.length = inner.length();
+
+        this.writer = new Thread(this::writeLoop, "write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Odlozeny zapis zlyhal", failure);
+        }
+    }
+
+    @Override
+    public void write(long addr, ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() % blockSize != 0) {
+            throw new IllegalArgumentException("Zapisuje sa iba po celych blokoch velkosti " + blockSize);
+        }
+
+        synchronized (lock) {
+            checkFailure();
+            while (pending.size() >= maxPending && !closing) {
+                waitForWriter();
+            }
+
+            for (int pos = 0; pos < buffer.capacity(); pos += blockSize) {
+                ByteBuffer copy = pending.get(addr + pos);
+                if (copy == null) {
+                    copy = ByteBuffer.allocate(blockSize);
+                    pending.put(addr + pos, copy);
+                }
+                copy.put(0, buffer, pos, blockSize);
+                submittedBlocks++;
+            }
+
+            length = Math.max(length, addr + buffer.capacity());
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void read(long addr, ByteBuffer buffer) throws IOException {
+        synchronized (ioLock) {
+            inner.read(addr, buffer);
+
+            synchronized (lock) {
+                overlay(addr, buffer);
+            }
+        }
+    }
+
+    // nezapisane bloky v rozsahu citania prepisu to, co je na disku, novsie (pending) nakoniec
+    private void overlay(long addr, ByteBuffer buffer) {
+        long end = addr + buffer.capacity();
+        for (TreeMap<Long, ByteBuffer> map : List.of(inFlight, pending)) {
+            for (Map.Entry<Long, ByteBuffer> e : map.subMap(addr - blockSize + 1, end).entrySet()) {
+                long from = Math.max(addr, e.getKey());
+                long to = Math.min(end, e.getKey() + blockSize);
+                buffer.put((int) (from - addr), e.getValue(), (int) (from - e.getKey()), (int) (to - from));
+            }
+        }
+    }
+
+    // pohlad sa da pouzit iba ak v rozsahu nie je nic nezapisane a ak ho zapisovacie vlakno
+    // nemoze zmenit - pohlad do CachedStorage je ramec, ktory zapis ineho bloku moze vyhodit
+    @Override
+    public ByteBuffer view(long addr, int size) throws IOException {
+        if (!inner.supportsConcurrentReads()) {
+            return null;
+        }
+        synchronized (ioLock) {
+            synchronized (lock) {
+                long from = addr - blockSize + 1;
+                if (!pending.subMap(from, addr + size).isEmpty() || !inFlight.subMap(from, addr + size).isEmpty()) {
+                    return null;
+                }
+            }
+            return inner.view(addr, size);
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            synchronized (lock) {
+                while ((pending.isEmpty() || failure != null) && !closing) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty() || failure != null) {
+                    return;
+                }
+
+                inFlight = pending;
+                pending = new TreeMap<>();
+            }
+
+            writeBatch();
+
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // davka sa zapisuje po behoch susednych blokov, kazdy beh sa po zapise odstrani z inFlight
+    // beh, ktory sa nezapisal, sa vrati do pending, ak tam uz nie je novsia verzia bloku
+    private void writeBatch() {
+        ArrayList<Long> addresses;
+        synchronized (lock) {
+            addresses = new ArrayList<>(inFlight.keySet());
+        }
+
+        int i = 0;
+        while (i < addresses.size()) {
+            int runEnd = i + 1;
+            while (runEnd < addresses.size() && runEnd - i < MAX_RUN
+                    && addresses.get(runEnd) == addresses.get(runEnd - 1) + blockSize) {
+                runEnd++;
+            }
+
+            long start = addresses.get(i);
+            ByteBuffer run = ByteBuffer.allocate((runEnd - i) * blockSize);
+
+            synchronized (ioLock) {
+                boolean failed;
+                synchronized (lock) {
+                    for (int k = i; k < runEnd; k++) {
+                        run.put((k - i) * blockSize, inFlight.get(addresses.get(k)), 0, blockSize);
+                    }
+                    failed = failure != null;
+                }
+
+                boolean written = false;
+                try {
+                    if (!failed) {
+                        inner.write(start, run);
+                        written = true;
+                    }
+                } catch (IOException e) {
+                    synchronized (lock) {
+                        failure = e;
+                    }
+                }
+
+                synchronized (lock) {
+                    for (int k = i; k < runEnd; k++) {
+                        ByteBuffer block = inFlight.remove(addresses.get(k));
+                        if (!written) {
+                            pending.putIfAbsent(addresses.get(k), block);
+                        }
+                    }
+                    if (written) {
+                        writtenBlocks += runEnd - i;
+                    }
+                }
+            }
+            i = runEnd;
+        }
+    }
+
+    private void waitForWriter() throws IOException {
+        try {
+            lock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Cakanie na odlozeny zapis bolo prerusene", e);
+        }
+    }
+
+    // bariera - po navrate je vsetko zapisane v inner a inner.flush() je zavolany
+    @Override
+    public void flush() throws IOException {
+        synchronized (lock) {
+            while (!pending.isEmpty() || !inFlight.isEmpty()) {
+                if (!writer.isAlive() || (failure != null && inFlight.isEmpty())) break;
+                waitForWriter();
+            }
+            checkFailure();
+        }
+        synchronized (ioLock) {
+            inner.flush();
+        }
+    }
+
+    @Override
+    public long length() {
+        synchronized (lock) {
+            return length;
+        }
+    }
+
+    // pred zmenou dlzky sa zapise vsetko cakajuce, aby sa odrezane bloky nezapisali neskor
+    @Override
+    public void setLength(long newLength) throws IOException {
+        flush();
+        synchronized (ioLock) {
+            inner.setLength(newLength);
+        }
+        synchronized (lock) {
+            length = newLength;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        synchronized (lock) {
+            closing = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        inner.close();
+    }
+
+    // kolko zapisov blokov prislo a kolko z nich naozaj islo na disk
+    public long getSubmittedBlocks() {
+        synchronized (lock) {
+            return submittedBlocks;
+        }
+    }
+
+    public long getWrittenBlocks() {
+        synchronized (lock) {
+            return writtenBlocks;
+        }
+    }
+
+    // pripnutie bloku v cache pod odlozenym zapisom - cache nie je vlaknovo bezpecna,
+    // preto pod ioLock ako zapisy vlakna na pozadi, bez cache nerobi nic
+    public void pin(long addr) throws IOException {
+        if (!(inner instanceof CachedStorage)) return;
+        synchronized (ioLock) {
+            ((CachedStorage) inner).pin(addr);
+        }
+    }
+
+    public void unpin(long addr) {
+        if (!(inner instanceof CachedStorage)) return;
+        synchronized (ioLock) {
+            ((CachedStorage) inner).unpin(addr);
+        }
+    }
+
+    public IBlockStorage getInner() {
+        return inner;
+    }
+}
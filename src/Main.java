@@ -117,9 +117,13 @@ public class Main {
     private static void deleteFiles() {
         delete("data.bin");
         delete("data.bin.meta");
+        delete("data.bin.fsm");
         delete("data.bin.lh.meta");
+        delete("data.bin.lh.meta.tmp");
+        delete("data.bin.wal");
         delete("overflow.bin");
         delete("overflow.bin.meta");
+        delete("overflow.bin.fsm");
     }
     private static void delete(String path) {
         try {
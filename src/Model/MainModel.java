@@ -1,6 +1,13 @@
 package Model;
 
+import DataStructures.BlockFormat;
+import DataStructures.BlockLayout;
+import DataStructures.ChannelStorage;
+import DataStructures.Durability;
+import DataStructures.IRecord;
+import DataStructures.LayoutAdvisor;
 import DataStructures.LinearHashFile;
+import DataStructures.MappedStorage;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -10,6 +17,17 @@ public class MainModel {
     private LinearHashFile<Person> people;
     private LinearHashFile<PCRTest> tests;
 
+    private static final int BLOCK_POOL_SIZE = 8;
+    // primarna oblast je namapovana, cache sa pouziva iba pre preplnujuci subor
+    private static final int OVERFLOW_CACHE_BYTES = 256 * 1024;
+    // zmeny tabuliek idu cez write-ahead log, force raz za skupinu operacii
+    private static final Durability DURABILITY = Durability.GROUP;
+    // nove tabulky maju hlavicku na prvej stranke, starsie ju nemaju a bloky maju 256 B
+    private static final int PAGE_SIZE = BlockLayout.DEFAULT_PAGE_SIZE;
+    private static final int LEGACY_BLOCK_SIZE = 256;
+    // skupina sa rozdeli po prekroceni tolkych zaznamov
+    private static final int BUCKET_SPLIT_SIZE = 6;
+
     private boolean isDbOpen = false;
 
     private final Random rnd = new Random();
@@ -26,31 +44,31 @@ public class MainModel {
             closeDatabase();
         }
 
-        this.people = new LinearHashFile<>(
-                peoplePath + "_main.bin",
-                256,
-                peoplePath + "_overflow.bin",
-                256,
-                4,
-                new Person()
-        );
+        this.people = openTable(peoplePath, null, null, 4, new Person());
 
-        this.tests = new LinearHashFile<>(
-                testsPath + "_main.bin",
-                256,
-                testsPath + "_overflow.bin",
-                256,
-                4,
-                new PCRTest()
-        );
+        this.tests = openTable(testsPath, null, null, 4, new PCRTest());
 
         people.enableDensitySplit(1.2);
-        people.enableBucketSizeSplit(6);
+        people.enableBucketSizeSplit(BUCKET_SPLIT_SIZE);
         people.enableOverflowCountSplit(2);
+        people.enableDensityMerge(0.5);
 
         tests.enableDensitySplit(1.2);
-        tests.enableBucketSizeSplit(6);
+        tests.enableBucketSizeSplit(BUCKET_SPLIT_SIZE);
         tests.enableOverflowCountSplit(2);
+        tests.enableDensityMerge(0.5);
+
+        people.enableLazyBlocks();
+        tests.enableLazyBlocks();
+
+        people.enableBlockRecycling(BLOCK_POOL_SIZE);
+        tests.enableBlockRecycling(BLOCK_POOL_SIZE);
+
+        people.enableCache(0, OVERFLOW_CACHE_BYTES);
+        tests.enableCache(0, OVERFLOW_CACHE_BYTES);
+
+        people.enableWal(DURABILITY);
+        tests.enableWal(DURABILITY);
 
         isDbOpen = true;
     }
@@ -68,36 +86,70 @@ public class MainModel {
     ) throws Exception {
         if (isDbOpen) closeDatabase();
 
-        people = new LinearHashFile<>(
-                peoplePath + "_main.bin",
-                peopleMainBlock,
-                peoplePath + "_overflow.bin",
-                peopleOverflowBlock,
-                peopleM,
-                new Person()
-        );
+        people = openTable(peoplePath, BlockLayout.withHeaderPage(peopleMainBlock, PAGE_SIZE),
+                BlockLayout.withHeaderPage(peopleOverflowBlock, PAGE_SIZE), peopleM, new Person());
 
-        tests = new LinearHashFile<>(
-                testsPath + "_main.bin",
-                testsMainBlock,
-                testsPath + "_overflow.bin",
-                testsOverflowBlock,
-                testsM,
-                new PCRTest()
-        );
+        tests = openTable(testsPath, BlockLayout.withHeaderPage(testsMainBlock, PAGE_SIZE),
+                BlockLayout.withHeaderPage(testsOverflowBlock, PAGE_SIZE), testsM, new PCRTest());
 
         people.enableDensitySplit(1.2);
-        people.enableBucketSizeSplit(6);
+        people.enableBucketSizeSplit(BUCKET_SPLIT_SIZE);
         people.enableOverflowCountSplit(2);
+        people.enableDensityMerge(0.5);
 
         tests.enableDensitySplit(1.2);
-        tests.enableBucketSizeSplit(6);
+        tests.enableBucketSizeSplit(BUCKET_SPLIT_SIZE);
         tests.enableOverflowCountSplit(2);
+        tests.enableDensityMerge(0.5);
+
+        people.enableLazyBlocks();
+        tests.enableLazyBlocks();
+
+        people.enableBlockRecycling(BLOCK_POOL_SIZE);
+        tests.enableBlockRecycling(BLOCK_POOL_SIZE);
+
+        people.enableCache(0, OVERFLOW_CACHE_BYTES);
+        tests.enableCache(0, OVERFLOW_CACHE_BYTES);
+
+        people.enableWal(DURABILITY);
+        tests.enableWal(DURABILITY);
 
         isDbOpen = true;
     }
 
 
+    // primarna oblast tabulky je mala a citana pri kazdej operacii, preto je namapovana do pamate
+    // bez zadaneho rozlozenia sa cita z hlavicky existujucich suborov
+    private static <T extends IRecord<T>> LinearHashFile<T> openTable(String path, BlockLayout mainLayout,
+                                                                      BlockLayout overflowLayout,
+                                                                      int m, T prototype) throws Exception {
+        String mainPath = path + "_main.bin";
+        String overflowPath = path + "_overflow.bin";
+
+        if (mainLayout == null) {
+            mainLayout = existingLayout(mainPath);
+        }
+        if (overflowLayout == null) {
+            overflowLayout = existingLayout(overflowPath);
+        }
+
+        return new LinearHashFile<>(mainPath, mainLayout, overflowPath, overflowLayout, m, prototype,
+                BlockFormat.fixed(), new MappedStorage(mainPath, mainLayout.getBlockSize()),
+                new ChannelStorage(overflowPath));
+    }
+
+    private static BlockLayout existingLayout(String path) throws Exception {
+        BlockLayout layout = BlockLayout.read(path);
+        return (layout != null) ? layout : BlockLayout.plain(LEGACY_BLOCK_SIZE);
+    }
+
+    // velkost bloku s najmenej citanymi strankami na vyhladanie v skupine pred splitom
+    public static int defaultBlockSize(IRecord<?> prototype) {
+        LayoutAdvisor advisor = new LayoutAdvisor(prototype, BlockFormat.fixed(), PAGE_SIZE);
+        return advisor.recommend(BUCKET_SPLIT_SIZE).getBlockSize();
+    }
+
+
     public void closeDatabase() throws Exception {
         if (people != null) {
             people.close();
@@ -171,9 +223,7 @@ public class MainModel {
                     newData.getDay()
             );
 
-            for (int code : old.getTestCodes()) {
-                updated.addTestCode(code);
-            }
+            updated.copyTestCodesFrom(old);
 
             Person pattern = new Person();
             pattern.fromId(id);
@@ -1,14 +1,29 @@
 package Model;
 
 import DataStructures.IRecord;
-import java.io.*;
-import java.util.ArrayList;
+import DataStructures.RecordLayout;
+
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
 
 public class PCRTest implements IRecord<PCRTest> {
 
     private static final int PATIENT_ID_LEN = 10;
     private static final int NOTE_LEN = 11;
 
+    // testCode(4) + patientId(10+1) + timestamp(8) + result(1) + value(8) + note(11+1)
+    private static final RecordLayout<PCRTest> LAYOUT =
+            new RecordLayout<>(MethodHandles.lookup(), PCRTest.class)
+                    .intField("testCode")
+                    .string("patientId", PATIENT_ID_LEN)
+                    .longField("timestamp")
+                    .booleanField("result")
+                    .doubleField("value")
+                    .string("note", NOTE_LEN);
+
+    private static final RecordLayout.Field TEST_CODE = LAYOUT.field("testCode");
+
+
     private int testCode;
     private String patientId;
 
@@ -54,80 +69,27 @@ public class PCRTest implements IRecord<PCRTest> {
 
     @Override
     public int getSize() {
-        // testCode(4) + patientId(10+1) + timestamp(8) + result(1) + value(8) + note(11+1)
-        return 4 + (PATIENT_ID_LEN + 1) + 8 + 1 + 8 + (NOTE_LEN + 1);
+        return LAYOUT.getSize();
     }
 
     @Override
-    public ArrayList<Byte> getBytes() {
-        try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            DataOutputStream dos = new DataOutputStream(baos);
-
-            dos.writeInt(this.testCode);
-
-            byte[] idBytes = this.patientId.getBytes();
-            dos.write(pad(idBytes, PATIENT_ID_LEN));
-            dos.writeByte(Math.min(idBytes.length, PATIENT_ID_LEN));
-
-            dos.writeLong(this.timestamp);
-
-            dos.writeBoolean(this.result);
-            dos.writeDouble(this.value);
-
-            byte[] noteBytes = this.note.getBytes();
-            dos.write(pad(noteBytes, NOTE_LEN));
-            dos.writeByte(Math.min(noteBytes.length, NOTE_LEN));
-
-            byte[] arr = baos.toByteArray();
-            ArrayList<Byte> out = new ArrayList<>(arr.length);
-            for (byte b : arr) {
-                out.add(b);
-            }
-            return out;
-
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    public RecordLayout<PCRTest> getLayout() {
+        return LAYOUT;
     }
 
     @Override
-    public void fromBytes(ArrayList<Byte> a) {
-        try {
-            byte[] arr = new byte[a.size()];
-            for (int i = 0; i < a.size(); i++)
-                arr[i] = a.get(i);
-
-            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(arr));
-
-            this.testCode = dis.readInt();
-
-            byte[] tmp = new byte[PATIENT_ID_LEN];
-            dis.readFully(tmp);
-            int idReal = dis.readUnsignedByte();
-            this.patientId = new String(tmp, 0, idReal);
-
-            this.timestamp = dis.readLong();
-
-            this.result = dis.readBoolean();
-            this.value = dis.readDouble();
-
-            tmp = new byte[NOTE_LEN];
-            dis.readFully(tmp);
-            int noteReal = dis.readUnsignedByte();
-            this.note = new String(tmp, 0, noteReal);
+    public int getKeyOffset() {
+        return TEST_CODE.getOffset();
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    @Override
+    public int getKeyLength() {
+        return TEST_CODE.getWidth();
     }
 
-    private byte[] pad(byte[] before, int length) {
-        byte[] out = new byte[length];
-        for (int i = 0; i < length; i++) {
-            out[i] = (i < before.length) ? before[i] : 0;
-        }
-        return out;
+    @Override
+    public void writeKeyTo(ByteBuffer buffer, int offset) {
+        TEST_CODE.putInt(buffer, offset, this.testCode);
     }
 
     @Override
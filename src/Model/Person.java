@@ -1,9 +1,11 @@
 package Model;
 
 import DataStructures.IRecord;
+import DataStructures.RecordLayout;
 
-import java.io.*;
-import java.util.ArrayList;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class Person implements IRecord<Person> {
 
@@ -12,12 +14,27 @@ public class Person implements IRecord<Person> {
     private static final int ID_LEN = 10;
     private static final int MAX_TESTS = 6;
 
+    // 15 + 1 + 14 + 1 + 10 + 1 + 12 (dátum) + 4 (testCount) + 24 (6 testov × 4B)
+    private static final RecordLayout<Person> LAYOUT =
+            new RecordLayout<>(MethodHandles.lookup(), Person.class)
+                    .string("name", NAME_LEN)
+                    .string("surname", SURNAME_LEN)
+                    .string("id", ID_LEN)
+                    .intField("year")
+                    .intField("month")
+                    .intField("day")
+                    .intField("testCount")
+                    .intArray("pcrTestCodes", MAX_TESTS);
+
+    private static final RecordLayout.Field ID = LAYOUT.field("id");
+
+
     private String name;
     private String surname;
     private String id;
     private int year, month, day;
 
-    private ArrayList<Integer> pcrTestCodes;
+    private int[] pcrTestCodes;
     private int testCount;
 
     public Person() {
@@ -28,10 +45,7 @@ public class Person implements IRecord<Person> {
         this.month = 0;
         this.day = 0;
 
-        this.pcrTestCodes = new ArrayList<>(MAX_TESTS);
-        for (int i = 0; i < MAX_TESTS; i++) {
-            this.pcrTestCodes.add(0);
-        }
+        this.pcrTestCodes = new int[MAX_TESTS];
         this.testCount = 0;
     }
 
@@ -43,10 +57,7 @@ public class Person implements IRecord<Person> {
         this.month = m;
         this.day = d;
 
-        this.pcrTestCodes = new ArrayList<>(MAX_TESTS);
-        for (int i2 = 0; i2 < MAX_TESTS; i2++) {
-            this.pcrTestCodes.add(0);
-        }
+        this.pcrTestCodes = new int[MAX_TESTS];
         this.testCount = 0;
     }
 
@@ -57,39 +68,45 @@ public class Person implements IRecord<Person> {
 
     @Override
     public int getSize() {
-        // 15 + 1 + 14 + 1 + 10 + 1 + 12 (dátum) + 4 (testCount) + 24 (6 testov × 4B)
-        return NAME_LEN + 1 + SURNAME_LEN + 1 + ID_LEN + 1 + 12 + 4 + (MAX_TESTS * 4);
+        return LAYOUT.getSize();
     }
 
     public boolean addTestCode(int testCode) {
         if (testCount >= MAX_TESTS) {
             return false;
         }
-        pcrTestCodes.set(testCount, testCode);
+        pcrTestCodes[testCount] = testCode;
         testCount++;
         return true;
     }
 
     public boolean removeTestCode(int testCode) {
         for (int i = 0; i < testCount; i++) {
-            if (pcrTestCodes.get(i) == testCode) {
-                for (int j = i + 1; j < testCount; j++) {
-                    pcrTestCodes.set(j - 1, pcrTestCodes.get(j));
-                }
+            if (pcrTestCodes[i] == testCode) {
+                System.arraycopy(pcrTestCodes, i + 1, pcrTestCodes, i, testCount - i - 1);
                 testCount--;
-                pcrTestCodes.set(testCount, 0);
+                pcrTestCodes[testCount] = 0;
                 return true;
             }
         }
         return false;
     }
 
-    public ArrayList<Integer> getTestCodes() {
-        ArrayList<Integer> codes = new ArrayList<>();
-        for (int i = 0; i < testCount; i++) {
-            codes.add(pcrTestCodes.get(i));
+    // kopia platnych kodov testov
+    public int[] getTestCodes() {
+        return Arrays.copyOf(pcrTestCodes, testCount);
+    }
+
+    public int getTestCode(int index) {
+        if (index < 0 || index >= testCount) {
+            throw new IndexOutOfBoundsException("Test index " + index + ", pocet testov " + testCount);
         }
-        return codes;
+        return pcrTestCodes[index];
+    }
+
+    public void copyTestCodesFrom(Person other) {
+        System.arraycopy(other.pcrTestCodes, 0, this.pcrTestCodes, 0, MAX_TESTS);
+        this.testCount = other.testCount;
     }
 
     public int getTestCount() {
@@ -97,110 +114,23 @@ public class Person implements IRecord<Person> {
     }
 
     @Override
-    public ArrayList<Byte> getBytes() {
-
-        try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            DataOutputStream dos = new DataOutputStream(baos);
-
-            // NAME
-            byte[] nameBytes = this.name.getBytes();
-            dos.write(pad(nameBytes, NAME_LEN));
-            dos.writeByte(Math.min(nameBytes.length, NAME_LEN));
-
-            // SURNAME
-            byte[] surBytes = this.surname.getBytes();
-            dos.write(pad(surBytes, SURNAME_LEN));
-            dos.writeByte(Math.min(surBytes.length, SURNAME_LEN));
-
-            // ID
-            byte[] idBytes = this.id.getBytes();
-            dos.write(pad(idBytes, ID_LEN));
-            dos.writeByte(Math.min(idBytes.length, ID_LEN));
-
-            // DATE
-            dos.writeInt(this.year);
-            dos.writeInt(this.month);
-            dos.writeInt(this.day);
-
-
-            dos.writeInt(this.testCount);
-            for (int i = 0; i < MAX_TESTS; i++) {
-                dos.writeInt(this.pcrTestCodes.get(i));
-            }
-
-            byte[] arr = baos.toByteArray();
-            ArrayList<Byte> out = new ArrayList<>(arr.length);
-            for (byte b : arr) {
-                out.add(b);
-            }
-
-            return out;
-
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    public RecordLayout<Person> getLayout() {
+        return LAYOUT;
     }
 
-    // nacitanie
     @Override
-    public void fromBytes(ArrayList<Byte> a) {
-
-        try {
-            byte[] arr = new byte[a.size()];
-            for (int i = 0; i < a.size(); i++)
-                arr[i] = a.get(i);
-
-            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(arr));
-
-            byte[] tmp;
-
-            // NAME
-            tmp = new byte[NAME_LEN];
-            dis.readFully(tmp);
-            int nameReal = dis.readUnsignedByte();
-            this.name = new String(tmp, 0, nameReal);
-
-            // SURNAME
-            tmp = new byte[SURNAME_LEN];
-            dis.readFully(tmp);
-            int surReal = dis.readUnsignedByte();
-            this.surname = new String(tmp, 0, surReal);
-
-            // ID
-            tmp = new byte[ID_LEN];
-            dis.readFully(tmp);
-            int idReal = dis.readUnsignedByte();
-            this.id = new String(tmp, 0, idReal);
-
-            // DATE
-            this.year = dis.readInt();
-            this.month = dis.readInt();
-            this.day = dis.readInt();
-
-            this.testCount = dis.readInt();
-            if (this.pcrTestCodes == null) {
-                this.pcrTestCodes = new ArrayList<>(MAX_TESTS);
-            }
-            for (int i = 0; i < MAX_TESTS; i++) {
-                if (i < this.pcrTestCodes.size()) {
-                    this.pcrTestCodes.set(i, dis.readInt());
-                } else {
-                    this.pcrTestCodes.add(dis.readInt());
-                }
-            }
+    public int getKeyOffset() {
+        return ID.getOffset();
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    @Override
+    public int getKeyLength() {
+        return ID.getWidth();
     }
 
-    private byte[] pad(byte[] before, int length) {
-        byte[] out = new byte[length];
-        for (int i = 0; i < length; i++) {
-            out[i] = (i < before.length) ? before[i] : 0;
-        }
-        return out;
+    @Override
+    public void writeKeyTo(ByteBuffer buffer, int offset) {
+        ID.putString(buffer, offset, this.id);
     }
 
     public void fromId(String newId) {
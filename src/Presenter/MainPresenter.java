@@ -53,15 +53,18 @@ public class MainPresenter {
                     "Tests path napr. 'tests':");
             if (testsPath == null || testsPath.isEmpty()) return;
 
+            int peopleBlock = MainModel.defaultBlockSize(new Person());
+            int testsBlock = MainModel.defaultBlockSize(new PCRTest());
+
             int peopleMainBlock = readInt(
-                    "People MAIN block size (default 256):", 256);
+                    "People MAIN block size (default " + peopleBlock + "):", peopleBlock);
             int peopleOverflowBlock = readInt(
-                    "People OVERFLOW block size (default 256):", 256);
+                    "People OVERFLOW block size (default " + peopleBlock + "):", peopleBlock);
 
             int testsMainBlock = readInt(
-                    "Tests MAIN block size (default 256):", 256);
+                    "Tests MAIN block size (default " + testsBlock + "):", testsBlock);
             int testsOverflowBlock = readInt(
-                    "Tests OVERFLOW block size (default 256):", 256);
+                    "Tests OVERFLOW block size (default " + testsBlock + "):", testsBlock);
 
             int peopleM = readInt(
                     "People počiatočné M (default 4):", 4);
@@ -306,8 +309,8 @@ public class MainPresenter {
                     view.appendOutput("(žiadne testy)");
                 } else {
                     view.appendOutput("TESTY:");
-                    for (int testCode : p.getTestCodes()) {
-                        PCRTest t = model.findTest(testCode);
+                    for (int i = 0; i < p.getTestCount(); i++) {
+                        PCRTest t = model.findTest(p.getTestCode(i));
                         if (t != null) {
                             view.appendOutput("- " + t);
                         }
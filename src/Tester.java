@@ -1,11 +1,16 @@
 import DataStructures.Block;
+import DataStructures.BlockFormat;
+import DataStructures.BlockIterator;
+import DataStructures.BlockLayout;
 import DataStructures.HeapFile;
 import DataStructures.LinearHashFile;
+import DataStructures.SegmentedStorage;
 import Model.Person;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Random;
 
 public class Tester {
@@ -64,19 +69,49 @@ public class Tester {
     }
 
 
+    // HeapFile s hlavickou nad segmentmi path.0 .. path.(n-1) striedanymi po blokoch
+    // velkost bloku, ktora nedeli hlavicku, sa musi odmietnut uz pri otvoreni
+    public static void segmentedHeapTest(String path, int segmentCount, int blockSize,
+                                         int operations) throws Exception {
+
+        String[] paths = new String[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            paths[i] = path + "." + i;
+            new File(paths[i]).delete();
+        }
+        new File(path + ".fsm").delete();
+
+        HeapFile<Person> hf = new HeapFile<>(path,
+                BlockLayout.withHeaderPage(blockSize, BlockLayout.DEFAULT_PAGE_SIZE), new Person(), false,
+                BlockFormat.fixed(), SegmentedStorage.roundRobin(paths, blockSize));
+        mixedHeapTest(hf, operations, 60, 20, 20, 50);
+        hf.close();
+
+        int badBlockSize = blockSize + blockSize / 2;
+        SegmentedStorage bad = SegmentedStorage.roundRobin(paths, badBlockSize);
+        try {
+            new HeapFile<>(path + ".bad",
+                    BlockLayout.withHeaderPage(badBlockSize, BlockLayout.DEFAULT_PAGE_SIZE), new Person(), true,
+                    BlockFormat.fixed(), bad);
+            throw new RuntimeException("SEGMENT ERROR: block " + badBlockSize + " B accepted with header page");
+        } catch (IllegalArgumentException e) {
+            // ocakavane
+        } finally {
+            bad.close();
+        }
+
+        System.out.println("SEGMENTED HEAP OK (" + segmentCount + " segments, block " + blockSize + " B)");
+    }
+
+
     private static void validateWholeHeapFile(HeapFile<Person> hf,
                                               ArrayList<Person> expected) throws Exception {
 
         ArrayList<Person> actual = new ArrayList<>();
 
-        long fileLength = hf.getFileLength();
-        int blockSize = hf.getBlockSize();
-
-        for (long addr = 0; addr + blockSize <= fileLength; addr += blockSize) {
-            var block = hf.readBlock(addr);
-            for (int i = 0; i < block.getValidCount(); i++)
-                actual.add(block.getList().get(i));
-        }
+        Iterator<Person> records = hf.recordIterator();
+        while (records.hasNext())
+            actual.add(records.next());
 
         if (actual.size() != expected.size())
             throw new RuntimeException("COUNT ERROR: expected=" + expected.size() + " actual=" + actual.size());
@@ -122,7 +157,9 @@ public class Tester {
                     int idx = rnd.nextInt(model.size());
                     Person p = model.get(idx);
 
-                    //lhf.delete(p);
+                    if (!lhf.delete(p)) {
+                        throw new RuntimeException("DELETE ERROR: expected=" + p.getId());
+                    }
                     model.remove(idx);
                 }
             }
@@ -157,10 +194,11 @@ public class Tester {
         int groups = lhf.getS() + lhf.getM() * (int)Math.pow(2, lhf.getU());
         int blockSize = lhf.getMainFile().getBlockSize();
 
-        for (int i = 0; i < groups; i++) {
+        BlockIterator<Person> primaryBlocks = lhf.getMainFile().blockIterator(0, (long) groups * blockSize,
+                HeapFile.DEFAULT_READ_AHEAD);
+        while (primaryBlocks.hasNext()) {
 
-            long addr = (long) i * blockSize;
-            Block<Person> block = lhf.getMainFile().readBlock(addr);
+            Block<Person> block = primaryBlocks.next();
 
             for (int j = 0; j < block.getValidCount(); j++) {
                 actual.add(block.getList().get(j));
@@ -227,10 +265,11 @@ public class Tester {
             bucketMap.add(new ArrayList<>());
         }
 
-        for (int i = 0; i < groups; i++) {
+        BlockIterator<Person> primaryBlocks = lhf.getMainFile().blockIterator(0, (long) groups * blockSize,
+                HeapFile.DEFAULT_READ_AHEAD);
+        for (int i = 0; primaryBlocks.hasNext(); i++) {
 
-            long addr = (long) i * blockSize;
-            Block<Person> block = lhf.getMainFile().readBlock(addr);
+            Block<Person> block = primaryBlocks.next();
 
             for (int j = 0; j < block.getValidCount(); j++) {
                 Person p = block.getList().get(j);
@@ -287,10 +326,10 @@ public class Tester {
             }
         }
 
-        for (int i = 0; i < groups; i++) {
+        primaryBlocks = lhf.getMainFile().blockIterator(0, (long) groups * blockSize, HeapFile.DEFAULT_READ_AHEAD);
+        for (int i = 0; primaryBlocks.hasNext(); i++) {
 
-            long addr = (long) i * blockSize;
-            Block<Person> blk = lhf.getMainFile().readBlock(addr);
+            Block<Person> blk = primaryBlocks.next();
 
             long next = blk.getNext();
 